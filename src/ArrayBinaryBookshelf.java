@@ -0,0 +1,236 @@
+// imports
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * This class creates a balanced bookshelf stored as parallel primitive arrays instead of TreeNode
+ * objects. Each book gets a slot, and the slot's left child, right child and height are kept in
+ * arrays indexed by that slot, so a lookup walks a few dense arrays rather than chasing a separate
+ * object per level. The only object per book is the Book itself.
+ *
+ * Each slot's packed author prefix sits in a long[] beside the links, so a probe compares that
+ * and only reads the Book when the first four chars of the authors tie.
+ *
+ * Slots number books in insertion order from 0 and stay valid until the bookshelf is cleared.
+ * Capacity doubles when it runs out, and snapshot() copies the arrays as they are.
+ */
+public class ArrayBinaryBookshelf extends HandleTree {
+  // fields
+  private static final int INITIAL_CAPACITY = 16; // slots the arrays first have room for
+  private Book[] books; // the book in each slot
+  private long[] prefixes; // the packed author prefix of each slot's book
+  private int[] lefts; // the left child of each slot, NIL if it has none
+  private int[] rights; // the right child of each slot, NIL if it has none
+  private byte[] heights; // the height of each slot's subtree, which never passes 64
+  private int count; // slots handed out so far
+  private Comparator<Book> comparator; // sortList compiled into one comparison, built once
+  private boolean readOnly; // true for snapshots, which can never change
+
+  // constructors
+  /**
+   * Single arg constructor to create new, empty ArrayBinaryBookshelf
+   *
+   * @param sortList an array of Attributes that will determine how books will be sorted
+   * @throws         IllegalArgumentException if the sortList is invalid
+   */
+  public ArrayBinaryBookshelf(Attribute[] sortList) {
+    super(sortList);
+    this.comparator = BinaryBookshelf.compileComparator(sortList());
+    release();
+  }
+
+  /**
+   * Single arg constructor to create a read-only copy of another ArrayBinaryBookshelf, with each
+   * array trimmed to the slots in use
+   *
+   * @param source ArrayBinaryBookshelf to copy
+   */
+  private ArrayBinaryBookshelf(ArrayBinaryBookshelf source) {
+    super(source);
+    this.comparator = source.comparator;
+    this.count = source.count;
+    this.books = Arrays.copyOf(source.books, count);
+    this.prefixes = Arrays.copyOf(source.prefixes, count);
+    this.lefts = Arrays.copyOf(source.lefts, count);
+    this.rights = Arrays.copyOf(source.rights, count);
+    this.heights = Arrays.copyOf(source.heights, count);
+    this.readOnly = true;
+  }
+
+  // mutators
+  /**
+   * Clears the ArrayBinaryBookshelf
+   *
+   * @throws UnsupportedOperationException if this bookshelf is a snapshot
+   */
+  @Override
+  public void clear() {
+    checkWritable();
+    super.clear();
+  }
+
+  /**
+   * Inserts a book into the ArrayBinaryBookshelf
+   *
+   * Complexity = O(logN)
+   *
+   * @param book a Book object to be added
+   * @throws     IllegalArgumentException if the book is already in the bookshelf
+   * @throws     UnsupportedOperationException if this bookshelf is a snapshot
+   */
+  @Override
+  public void insertBook(Book book) {
+    checkWritable();
+    super.insertBook(book);
+  }
+
+  // accessors
+  /**
+   * Gets the book in a slot
+   *
+   * @param slot int a slot handed out in insertion order, from 0 to size() - 1
+   * @throws     IndexOutOfBoundsException if there is no book in that slot
+   * @return     the Book inserted into that slot
+   */
+  public Book get(int slot) {
+    if(slot < 0 || slot >= count)
+      throw new IndexOutOfBoundsException("No book in slot " + slot);
+
+    return books[slot];
+  }
+
+  /**
+   * Gets the Comparator built from this bookshelf's sortList
+   *
+   * @return this.comparator a Comparator<Book> that returns 0 only for the same book
+   */
+  public Comparator<Book> getComparator() {
+    return this.comparator;
+  }
+
+  /**
+   * Takes a read-only copy of the bookshelf. The copy is five flat arrays, so it costs one
+   * System.arraycopy each and nothing per book.
+   *
+   * Complexity = O(N)
+   *
+   * @return a read-only ArrayBinaryBookshelf holding exactly the books in this one right now
+   */
+  public ArrayBinaryBookshelf snapshot() {
+    return readOnly ? this : new ArrayBinaryBookshelf(this);
+  }
+
+  /**
+   * Checks whether this bookshelf is a snapshot that can't be changed
+   *
+   * @return true if this bookshelf is read-only, false otherwise
+   */
+  public boolean isReadOnly() {
+    return this.readOnly;
+  }
+
+  // storage
+  /**
+   * Stores a book in the next slot, doubling the arrays when they are full
+   *
+   * @param book Book to store
+   * @throws     IllegalStateException if every int slot is used
+   * @return     the new slot
+   */
+  @Override
+  int store(Book book) {
+    if(count == books.length) {
+      if(count == Integer.MAX_VALUE - 8)
+        throw new IllegalStateException("Too many books for one array bookshelf");
+
+      int newCapacity = (int) Math.min(2L * count, Integer.MAX_VALUE - 8);
+      books = Arrays.copyOf(books, newCapacity);
+      prefixes = Arrays.copyOf(prefixes, newCapacity);
+      lefts = Arrays.copyOf(lefts, newCapacity);
+      rights = Arrays.copyOf(rights, newCapacity);
+      heights = Arrays.copyOf(heights, newCapacity);
+    }
+
+    int slot = count++;
+    books[slot] = book;
+    prefixes[slot] = BinaryBookshelf.authorPrefix(book.getAuthor());
+    lefts[slot] = NIL;
+    rights[slot] = NIL;
+    heights[slot] = 1;
+    return slot;
+  }
+
+  /**
+   * Drops every array and starts over with small ones
+   */
+  @Override
+  void release() {
+    this.count = 0;
+    this.books = new Book[INITIAL_CAPACITY];
+    this.prefixes = new long[INITIAL_CAPACITY];
+    this.lefts = new int[INITIAL_CAPACITY];
+    this.rights = new int[INITIAL_CAPACITY];
+    this.heights = new byte[INITIAL_CAPACITY];
+  }
+
+  @Override
+  Book book(int node) {
+    return books[node];
+  }
+
+  @Override
+  long prefix(int node) {
+    return prefixes[node];
+  }
+
+  @Override
+  int compare(Book book, int node) {
+    return comparator.compare(book, books[node]);
+  }
+
+  @Override
+  int compareAuthor(String author, int node) {
+    return author.compareTo(books[node].getAuthor());
+  }
+
+  @Override
+  int left(int node) {
+    return lefts[node];
+  }
+
+  @Override
+  int right(int node) {
+    return rights[node];
+  }
+
+  @Override
+  int height(int node) {
+    return heights[node];
+  }
+
+  @Override
+  void setLeft(int node, int child) {
+    lefts[node] = child;
+  }
+
+  @Override
+  void setRight(int node, int child) {
+    rights[node] = child;
+  }
+
+  @Override
+  void setHeight(int node, int height) {
+    heights[node] = (byte) height;
+  }
+
+  // helpers
+  /**
+   * Throws if this bookshelf is a snapshot, called before anything changes
+   *
+   * @throws UnsupportedOperationException if this bookshelf is read-only
+   */
+  private void checkWritable() {
+    if(readOnly)
+      throw new UnsupportedOperationException("A bookshelf snapshot cannot be changed");
+  }
+}
@@ -0,0 +1,475 @@
+// imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class creates a bookshelf ordered like BinaryBookshelf but stored as a B+tree. Each node
+ * holds up to fanOut books (or child links) packed in one array and binary searched, so the tree is
+ * only log base fanOut of N levels tall and a lookup touches a handful of nodes instead of one per
+ * binary level. Every book sits in a leaf, and the leaves are linked in order, so iteration and
+ * getBooksByAuthor run straight along them without going back up the tree.
+ *
+ * Next to its Book references, each node keeps the first four chars of every key's author packed
+ * into a long[]. AUTHOR always sorts first, so a binary search probe compares those inline longs
+ * and only follows the reference to the Book and its Strings when the four chars tie.
+ */
+public class BTreeBookshelf implements Iterable<Book> {
+  // fields
+  private static final int DEFAULT_FAN_OUT = 64; // books per leaf and children per inner node
+  private static final int MIN_FAN_OUT = 4; // smallest fan-out that splits into useful halves
+  private Node root; // root node, a Leaf until the first split
+  private Leaf first; // leftmost leaf, where in order walks start
+  private int size; // current number of books
+  private int height; // levels in the tree, 1 while the root is a leaf
+  private int fanOut; // most books a leaf or children an inner node can hold
+  private Attribute[] sortList; // ordered array of attributes that sorts the books
+  private Comparator<Book> comparator; // sortList compiled into one comparison, built once
+  private Book splitKey; // first book of the node the last split created, set by split
+  private Node splitNode; // the node the last split created, set by split
+
+  // constructors
+  /**
+   * Single arg constructor to create new BTreeBookshelf with the default fan-out
+   *
+   * @param sortList an array of Attributes that will determine how books will be sorted
+   * @throws         IllegalArgumentException if the sortList is invalid
+   */
+  public BTreeBookshelf(Attribute[] sortList) {
+    this(sortList, DEFAULT_FAN_OUT);
+  }
+
+  /**
+   * Two arg constructor to create new BTreeBookshelf
+   *
+   * @param sortList an array of Attributes that will determine how books will be sorted
+   * @param fanOut   int the most books a leaf or children an inner node holds, larger for fewer
+   *                 levels and smaller for cheaper inserts
+   * @throws         IllegalArgumentException if the sortList is invalid or fanOut is below 4
+   */
+  public BTreeBookshelf(Attribute[] sortList, int fanOut) {
+    BinaryBookshelf.sortListValidity(sortList);
+    if(fanOut < MIN_FAN_OUT)
+      throw new IllegalArgumentException("fanOut must be at least " + MIN_FAN_OUT);
+
+    this.fanOut = fanOut;
+    this.sortList = sortList.clone();
+    this.comparator = BinaryBookshelf.compileComparator(this.sortList);
+    clear();
+  }
+
+  // mutators
+  /**
+   * Clears the BTreeBookshelf
+   */
+  public void clear() {
+    this.first = new Leaf(fanOut);
+    this.root = first;
+    this.size = 0;
+    this.height = 1;
+  }
+
+  /**
+   * Inserts a book, splitting full nodes on the way back up and growing a new root if the old one
+   * splits
+   *
+   * Complexity = O(logN)
+   *
+   * @param book a Book object to be added
+   * @throws     IllegalArgumentException if the book is already in the bookshelf
+   */
+  public void insertBook(Book book) {
+    if(insert(root, book)) {
+      Inner newRoot = new Inner(fanOut);
+      newRoot.children[0] = root;
+      newRoot.keys[0] = splitKey;
+      newRoot.prefixes[0] = BinaryBookshelf.authorPrefix(splitKey.getAuthor());
+      newRoot.children[1] = splitNode;
+      newRoot.count = 2;
+      root = newRoot;
+      height += 1;
+    }
+    size += 1;
+  }
+
+  // accessors
+  /**
+   * Checks if the bookshelf contains a book, binary searching one node per level
+   *
+   * Complexity = O(logN)
+   *
+   * @param book a Book object that is trying to be found
+   * @return     true if found, false otherwise
+   */
+  public boolean contains(Book book) {
+    Node current = root;
+
+    for(int level = 1; level < height; ++level) {
+      Inner inner = (Inner) current;
+      current = inner.children[childIndex(inner, book)];
+    }
+
+    Leaf leaf = (Leaf) current;
+    long prefix = BinaryBookshelf.authorPrefix(book.getAuthor());
+    return search(leaf.keys, leaf.prefixes, leaf.count, book, prefix) >= 0;
+  }
+
+  /**
+   * Creates an ArrayList containing all books in the bookshelf that have the same author
+   *
+   * Complexity = O(logN + K), where K is the number of books by the author
+   *
+   * @param authorName a String representing which author's books are being looked for
+   * @return           an ArrayList containing all books by the author, in shelf order
+   */
+  public ArrayList<Book> getBooksByAuthor(String authorName) {
+    ArrayList<Book> authorBooks = new ArrayList<Book>();
+    long prefix = BinaryBookshelf.authorPrefix(authorName);
+    Node current = root;
+
+    // AUTHOR is always first in sortList, so the first book by the author is under the child just
+    // after the last separator by an author that sorts before them
+    for(int level = 1; level < height; ++level) {
+      Inner inner = (Inner) current;
+      current = inner.children[authorBound(inner.keys, inner.prefixes, inner.count - 1, authorName, 
+          prefix)];
+    }
+
+    // scans along the leaves until a book by someone else shows up
+    Leaf leaf = (Leaf) current;
+    int i = authorBound(leaf.keys, leaf.prefixes, leaf.count, authorName, prefix);
+    while(leaf != null) {
+      for(; i < leaf.count; ++i) {
+        if(!leaf.keys[i].getAuthor().equals(authorName))
+          return authorBooks;
+        authorBooks.add(leaf.keys[i]);
+      }
+      leaf = leaf.next;
+      i = 0;
+    }
+
+    return authorBooks;
+  }
+
+  /**
+   * Creates an Iterator that walks the linked leaves in order
+   *
+   * @return an Iterator<Book> over the bookshelf
+   */
+  @Override
+  public Iterator<Book> iterator() {
+    return new Iterator<Book>() {
+      private Leaf leaf = first.count > 0 ? first : null; // leaf holding the next book
+      private int index = 0; // position of the next book in leaf
+
+      @Override
+      public boolean hasNext() {
+        return leaf != null;
+      }
+
+      @Override
+      public Book next() {
+        if(leaf == null)
+          throw new NoSuchElementException();
+
+        Book book = leaf.keys[index++];
+        if(index == leaf.count) {
+          leaf = leaf.next;
+          index = 0;
+        }
+        return book;
+      }
+    };
+  }
+
+  /**
+   * Returns a copy of the sortList
+   *
+   * @return an array of the 4 Attributes in the order books are compared by
+   */
+  public Attribute[] getSortList() {
+    return this.sortList.clone();
+  }
+
+  /**
+   * Gets the Comparator built from this bookshelf's sortList
+   *
+   * @return this.comparator a Comparator<Book> that returns 0 only for the same book
+   */
+  public Comparator<Book> getComparator() {
+    return this.comparator;
+  }
+
+  /**
+   * Gets the most books a leaf or children an inner node can hold
+   *
+   * @return this.fanOut the fan-out
+   */
+  public int getFanOut() {
+    return this.fanOut;
+  }
+
+  /**
+   * Gets the number of levels in the tree, which is how many nodes every lookup visits
+   *
+   * @return this.height the number of levels, 1 while every book fits in one leaf
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Checks whether this bookshelf is empty or not
+   *
+   * @return true if there are no books, false otherwise
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Returns how many books are in the bookshelf
+   *
+   * @return this.size an int representing how many books are in the bookshelf
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Builds a String with each book on a new line, in the same format as BinaryBookshelf
+   *
+   * @return a String representing the bookshelf
+   */
+  @Override
+  public String toString() {
+    StringBuilder returnString = new StringBuilder();
+
+    for(Book book : this) {
+      returnString.append('\n');
+      book.appendTo(returnString);
+    }
+
+    return returnString.toString();
+  }
+
+  // helpers
+  /**
+   * Inserts a book under a node. If the node overflows it splits, leaving the new right half in
+   * splitNode and its first book in splitKey.
+   *
+   * @param node Node to insert under
+   * @param book Book to insert
+   * @throws     IllegalArgumentException if the book is already in the bookshelf
+   * @return     true if node split, false otherwise
+   */
+  private boolean insert(Node node, Book book) {
+    if(node instanceof Leaf) {
+      Leaf leaf = (Leaf) node;
+      long prefix = BinaryBookshelf.authorPrefix(book.getAuthor());
+      int index = search(leaf.keys, leaf.prefixes, leaf.count, book, prefix);
+      if(index >= 0)
+        throw new IllegalArgumentException("Cannot insert the same book multiple times");
+
+      insertAt(leaf.keys, leaf.count, -index - 1, book);
+      insertAt(leaf.prefixes, leaf.count, -index - 1, prefix);
+      leaf.count += 1;
+      if(leaf.count <= fanOut)
+        return false;
+
+      // the right half takes the upper books and its place in the chain of leaves
+      Leaf right = new Leaf(fanOut);
+      int half = leaf.count / 2;
+      right.count = leaf.count - half;
+      System.arraycopy(leaf.keys, half, right.keys, 0, right.count);
+      System.arraycopy(leaf.prefixes, half, right.prefixes, 0, right.count);
+      Arrays.fill(leaf.keys, half, leaf.count, null);
+      leaf.count = half;
+      right.next = leaf.next;
+      leaf.next = right;
+      splitKey = right.keys[0];
+      splitNode = right;
+      return true;
+    }
+
+    Inner inner = (Inner) node;
+    int index = childIndex(inner, book);
+    if(!insert(inner.children[index], book))
+      return false;
+
+    // the child split, so its new right half goes just after it
+    insertAt(inner.keys, inner.count - 1, index, splitKey);
+    long prefix = BinaryBookshelf.authorPrefix(splitKey.getAuthor());
+    insertAt(inner.prefixes, inner.count - 1, index, prefix);
+    insertAt(inner.children, inner.count, index + 1, splitNode);
+    inner.count += 1;
+    if(inner.count <= fanOut)
+      return false;
+
+    // the middle separator moves up instead of staying in either half
+    Inner right = new Inner(fanOut);
+    int half = inner.count / 2;
+    right.count = inner.count - half;
+    System.arraycopy(inner.children, half, right.children, 0, right.count);
+    System.arraycopy(inner.keys, half, right.keys, 0, right.count - 1);
+    System.arraycopy(inner.prefixes, half, right.prefixes, 0, right.count - 1);
+    splitKey = inner.keys[half - 1];
+    splitNode = right;
+    Arrays.fill(inner.children, half, inner.count, null);
+    Arrays.fill(inner.keys, half - 1, inner.count - 1, null);
+    inner.count = half;
+    return true;
+  }
+
+  /**
+   * Finds the child of an inner node whose subtree would hold a book
+   *
+   * @param inner Inner node to search
+   * @param book  Book to route
+   * @return      the index of the child
+   */
+  private int childIndex(Inner inner, Book book) {
+    // a separator is the first book of the child after it, so an equal book goes right
+    int index = search(inner.keys, inner.prefixes, inner.count - 1, book, 
+        BinaryBookshelf.authorPrefix(book.getAuthor()));
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  /**
+   * Binary searches a node's keys for a book, comparing author prefixes first and only reading the
+   * Books when they tie
+   *
+   * @param keys     array of Books sorted by sortList
+   * @param prefixes array of the author prefix of each key
+   * @param count    int the number of books in keys
+   * @param book     Book to look for
+   * @param prefix   long the author prefix of book
+   * @return         the index of book if found, otherwise -(insertion point) - 1, like
+   *                 Arrays.binarySearch
+   */
+  private int search(Book[] keys, long[] prefixes, int count, Book book, long prefix) {
+    int low = 0;
+    int high = count - 1;
+
+    while(low <= high) {
+      int mid = (low + high) >>> 1;
+      int val = Long.compareUnsigned(prefixes[mid], prefix);
+      if(val == 0)
+        val = comparator.compare(keys[mid], book);
+
+      if(val < 0)
+        low = mid + 1;
+      else if(val > 0)
+        high = mid - 1;
+      else
+        return mid;
+    }
+
+    return -(low + 1);
+  }
+
+  /**
+   * Counts the books at the start of a sorted array whose author sorts before an author
+   *
+   * @param keys       array of Books sorted by sortList
+   * @param prefixes   array of the author prefix of each key
+   * @param count      int the number of books in keys
+   * @param authorName String formatted like Book.getAuthor()
+   * @param prefix     long the author prefix of authorName
+   * @return           the index of the first book whose author is authorName or sorts after it
+   */
+  private static int authorBound(Book[] keys, long[] prefixes, int count, String authorName, 
+      long prefix) {
+    int low = 0;
+    int high = count;
+
+    while(low < high) {
+      int mid = (low + high) >>> 1;
+      int val = Long.compareUnsigned(prefixes[mid], prefix);
+      if(val == 0)
+        val = keys[mid].getAuthor().compareTo(authorName);
+
+      if(val < 0)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    return low;
+  }
+
+  /**
+   * Shifts the end of an array right by one to make room, then puts a value in the gap
+   *
+   * @param array Object[] with room for one more value
+   * @param count int the number of values in array
+   * @param index int where the value goes
+   * @param value Object to insert
+   */
+  private static void insertAt(Object[] array, int count, int index, Object value) {
+    System.arraycopy(array, index, array, index + 1, count - index);
+    array[index] = value;
+  }
+
+  /**
+   * Shifts the end of a long array right by one to make room, then puts a value in the gap
+   *
+   * @param array long[] with room for one more value
+   * @param count int the number of values in array
+   * @param index int where the value goes
+   * @param value long to insert
+   */
+  private static void insertAt(long[] array, int count, int index, long value) {
+    System.arraycopy(array, index, array, index + 1, count - index);
+    array[index] = value;
+  }
+
+  /**
+   * This class is a node of the tree, either a Leaf or an Inner node
+   */
+  private abstract static class Node {
+    protected int count; // books in a leaf, children of an inner node
+  }
+
+  /**
+   * This class holds up to fanOut books in order and links to the next leaf
+   */
+  private static class Leaf extends Node {
+    private Book[] keys; // the books, with one spare slot for a split
+    private long[] prefixes; // prefixes[i] is the author prefix of keys[i]
+    private Leaf next; // the leaf holding the next books in order, null for the last
+
+    /**
+     * Single arg constructor to create an empty Leaf
+     *
+     * @param fanOut int the most books the leaf holds
+     */
+    private Leaf(int fanOut) {
+      this.keys = new Book[fanOut + 1];
+      this.prefixes = new long[fanOut + 1];
+    }
+  }
+
+  /**
+   * This class holds up to fanOut children, separated by the first book of every child but the
+   * first
+   */
+  private static class Inner extends Node {
+    private Book[] keys; // keys[i] is the first book under children[i + 1]
+    private long[] prefixes; // prefixes[i] is the author prefix of keys[i]
+    private Node[] children; // the children, with one spare slot for a split
+
+    /**
+     * Single arg constructor to create an empty Inner node
+     *
+     * @param fanOut int the most children the node holds
+     */
+    private Inner(int fanOut) {
+      this.keys = new Book[fanOut];
+      this.prefixes = new long[fanOut];
+      this.children = new Node[fanOut + 1];
+    }
+  }
+}
@@ -1,14 +1,42 @@
 // imports
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class creates a bookshelf to hold books and orders them like a Binary Search Tree
  */
-public class BinaryBookshelf {
+public class BinaryBookshelf implements Iterable<Book> {
   // fields
   private TreeNode<Book> root; // root node of BST
   private int size; // current number of nodes in BST
   private Attribute[] sortList; // ordered array of attributes that will sort BST nodes
+  private Comparator<Book> comparator; // sortList compiled into one comparison, built once
+  private boolean balanced; // true if this bookshelf keeps itself height balanced (AVL)
+  private TreeNode<Book>[] path; // reusable root-to-leaf path recorded by balanced inserts
+  private Object owner; // nodes with this token are this bookshelf's own and can change in place
+  private boolean readOnly; // true for snapshots, which can never change
+  private static final int PARALLEL_THRESHOLD = 1 << 13; // books too few to split across threads
+  private volatile BinaryBookshelf pageCountIndex; // the books by page count, null until needed
+  private volatile BinaryBookshelf titleIndex; // the books by title, null until needed
+  private volatile BookIdIndex idIndex; // the books by ID, null until needed
   
   // constructors
   /**
@@ -18,167 +46,1433 @@ public class BinaryBookshelf {
    * @param sortList an array of Attributes that will determine how books will be sorted
    */
   public BinaryBookshelf(Attribute[] sortList) {
+    this(sortList, false);
+  }
+  
+  /**
+   * Two arg constructor to create new BinaryBookshelf that may balance itself
+   *     Initializes root, size, sortList, and balanced
+   * 
+   * A balanced bookshelf rebalances itself as an AVL tree after every insert, so its height stays
+   * O(logN) no matter what order the books arrive in
+   * 
+   * @param sortList an array of Attributes that will determine how books will be sorted
+   * @param balanced true to keep the bookshelf height balanced, false for a plain BST
+   */
+  public BinaryBookshelf(Attribute[] sortList, boolean balanced) {
     // validates sortList
     sortListValidity(sortList);
     this.root = null;
     this.size = 0;
-    this.sortList = sortList;
+    this.sortList = sortList.clone();
+    this.comparator = compileComparator(this.sortList);
+    this.balanced = balanced;
+  }
+  
+  /**
+   * Five arg constructor to create a read-only BinaryBookshelf sharing the nodes of another one
+   *     Initializes root, size, sortList, balanced, and the indexes from source
+   * 
+   * @param source         a BinaryBookshelf whose sortList and balancing the new bookshelf shares
+   * @param root           TreeNode<Book> the root of a frozen tree in source
+   * @param size           int the number of books in that tree
+   * @param pageCountIndex a read-only page count index of the same books, or null
+   * @param titleIndex     a read-only title index of the same books, or null
+   */
+  protected BinaryBookshelf(BinaryBookshelf source, TreeNode<Book> root, int size, 
+      BinaryBookshelf pageCountIndex, BinaryBookshelf titleIndex) {
+    this.root = root;
+    this.size = size;
+    this.sortList = source.sortList;
+    this.comparator = source.comparator;
+    this.balanced = source.balanced;
+    this.readOnly = true;
+    this.pageCountIndex = pageCountIndex;
+    this.titleIndex = titleIndex;
+    freeze();
+  }
+  
+  /**
+   * Two arg constructor to create an empty, balanced index holding the books of another bookshelf
+   * in a different order
+   * 
+   * @param source BinaryBookshelf whose books the index will hold
+   * @param order  Comparator<Book> that orders the index and returns 0 only for the same book
+   */
+  private BinaryBookshelf(BinaryBookshelf source, Comparator<Book> order) {
+    this.sortList = source.sortList;
+    this.comparator = order;
+    this.balanced = true;
+  }
+  
+  // mutators
+  /**
+   * Clears the BinaryBookshelf
+   * 
+   * @throws UnsupportedOperationException if this bookshelf is a snapshot
+   */
+  public void clear() {
+    checkWritable();
+    this.root = null;
+    this.size = 0;
+    this.path = null;
+    this.pageCountIndex = null;
+    this.titleIndex = null;
+    this.idIndex = null;
+  }
+  
+  /**
+   * Inserts a book into the BinaryBookshelf
+   * 
+   * @param book a Book object to be added
+   * @throws     IllegalArgumentException if the book is already in the bookshelf
+   * @throws     UnsupportedOperationException if this bookshelf is a snapshot
+   */
+  public void insertBook(Book book) {
+    checkWritable();
+    insertOne(book);
+  }
+  
+  /**
+   * Inserts a book and adds it to every index that has been built. Batches insert through this
+   * rather than the overridable insertBook, so a subclass sees one call per batch.
+   * 
+   * @param book a Book object to be added
+   * @throws     IllegalArgumentException if the book is already in the bookshelf
+   */
+  private void insertOne(Book book) {
+    // if there is no root, adds book as root, else calls insetBookHelper
+    if(this.root == null) {
+      root = newNode(book);
+      this.size += 1;
+    } else {
+      insertBookHelper(book, root);
+    }
+    
+    // the book is new, so it can't already be in an index either
+    if(pageCountIndex != null)
+      pageCountIndex.insertBook(book);
+    if(titleIndex != null)
+      titleIndex.insertBook(book);
+    if(idIndex != null)
+      idIndex.add(book);
+  }
+  
+  /**
+   * Inserts a whole batch of books at once. The batch is sorted by sortList (in parallel when it is
+   * large), checked for duplicates in one pass, merged with the books already on the shelf, and
+   * built straight into a height-optimal tree. Nothing changes if any book is a duplicate.
+   * 
+   * Complexity = O(N + MlogM) for M new books, or O(MlogN) when M is small next to N
+   * 
+   * @param books a Collection of Book objects to be added
+   * @throws      IllegalArgumentException if a book is in the batch twice or already shelved
+   * @throws      UnsupportedOperationException if this bookshelf is a snapshot
+   */
+  public void insertBooks(Collection<? extends Book> books) {
+    checkWritable();
+    insertSorted(sortBatch(books.toArray(new Book[books.size()])));
+  }
+  
+  /**
+   * Inserts a whole batch of books at once, see insertBooks(Collection). The array isn't changed.
+   * 
+   * @param books an array of Book objects to be added
+   * @throws      IllegalArgumentException if a book is in the batch twice or already shelved
+   * @throws      UnsupportedOperationException if this bookshelf is a snapshot
+   */
+  public void insertBooks(Book[] books) {
+    checkWritable();
+    insertSorted(sortBatch(books.clone()));
+  }
+  
+  /**
+   * Removes a book from the BinaryBookshelf. A balanced bookshelf rebalances on the way back up,
+   * so its height stays O(logN) under any mix of inserts and removals.
+   * 
+   * Complexity = O(logN)
+   * 
+   * @param book a Book object to be removed
+   * @throws     UnsupportedOperationException if this bookshelf is a snapshot
+   * @return     true if the book was on the shelf, false otherwise
+   */
+  public boolean removeBook(Book book) {
+    checkWritable();
+    return removeOne(book);
+  }
+  
+  /**
+   * Removes a book and drops it from every index that has been built. Batches remove through this
+   * rather than the overridable removeBook, so a subclass sees one call per batch.
+   * 
+   * @param book a Book object to be removed
+   * @return     true if the book was on the shelf, false otherwise
+   */
+  private boolean removeOne(Book book) {
+    Book removed = removeBookHelper(book);
+    if(removed == null)
+      return false;
+    
+    if(pageCountIndex != null)
+      pageCountIndex.removeBook(removed);
+    if(titleIndex != null)
+      titleIndex.removeBook(removed);
+    if(idIndex != null)
+      idIndex.remove(removed);
+    return true;
+  }
+  
+  /**
+   * Removes a whole batch of books at once. Books that aren't on the shelf, or are in the batch
+   * more than once, are skipped. A few books are removed one at a time; a larger batch is sorted
+   * and filtered out of the books on the shelf in one pass, which are then rebuilt into a
+   * height-optimal tree.
+   * 
+   * Complexity = O(MlogN) when M is small next to N, otherwise O(N + MlogM)
+   * 
+   * @param books a Collection of Book objects to be removed
+   * @throws      UnsupportedOperationException if this bookshelf is a snapshot
+   * @return      the number of books removed
+   */
+  public int removeBooks(Collection<? extends Book> books) {
+    checkWritable();
+    Book[] batch = books.toArray(new Book[books.size()]);
+    if(batch.length == 0 || isEmpty())
+      return 0;
+    
+    // a few books from a big bookshelf are cheaper to remove one at a time
+    if((long) batch.length * (32 - Integer.numberOfLeadingZeros(size)) < size) {
+      int removed = 0;
+      for(int i = 0; i < batch.length; ++i) {
+        if(removeOne(batch[i]))
+          removed++;
+      }
+      return removed;
+    }
+    
+    // keeps every shelved book that the sorted batch doesn't match, both walked in order once
+    Arrays.parallelSort(batch, comparator);
+    Book[] shelved = toSortedArray();
+    Book[] kept = new Book[shelved.length];
+    ArrayList<Book> removed = new ArrayList<Book>();
+    int j = 0;
+    for(int i = 0; i < shelved.length; ++i) {
+      while(j < batch.length && comparator.compare(batch[j], shelved[i]) < 0)
+        j++;
+      
+      if(j < batch.length && comparator.compare(batch[j], shelved[i]) == 0)
+        removed.add(shelved[i]);
+      else
+        kept[i - removed.size()] = shelved[i];
+    }
+    if(removed.isEmpty())
+      return 0;
+    
+    this.root = buildBalanced(kept, 0, shelved.length - removed.size());
+    this.size = shelved.length - removed.size();
+    this.path = null;
+    
+    if(pageCountIndex != null)
+      pageCountIndex.removeBooks(removed);
+    if(titleIndex != null)
+      titleIndex.removeBooks(removed);
+    if(idIndex != null) {
+      for(Book book : removed)
+        idIndex.remove(book);
+    }
+    return removed.size();
+  }
+  
+  /**
+   * Sorts a batch of books by sortList and rejects it if any book is in it twice
+   * 
+   * @param batch an array of Book objects that may be reordered
+   * @throws      IllegalArgumentException if two books in the batch are the same
+   * @return      batch, sorted
+   */
+  private Book[] sortBatch(Book[] batch) {
+    // parallelSort only splits across threads once the batch is big enough to be worth it
+    Arrays.parallelSort(batch, comparator);
+    
+    // the same book twice would be next to each other after sorting
+    for(int i = 1; i < batch.length; ++i) {
+      if(comparator.compare(batch[i - 1], batch[i]) == 0)
+        throw new IllegalArgumentException("Cannot insert the same book multiple times");
+    }
+    
+    return batch;
+  }
+  
+  /**
+   * Adds a sorted, duplicate-free batch of books to the bookshelf
+   * 
+   * @param sorted an array of Book objects sorted by sortList
+   * @throws       IllegalArgumentException if a book is already in the bookshelf
+   */
+  private void insertSorted(Book[] sorted) {
+    if(sorted.length == 0)
+      return;
+    
+    // a few books into a big bookshelf are cheaper to insert one at a time, once all are checked
+    if(!isEmpty() && (long) sorted.length * (32 - Integer.numberOfLeadingZeros(size)) < size) {
+      for(int i = 0; i < sorted.length; ++i) {
+        if(contains(sorted[i]))
+          throw new IllegalArgumentException("Cannot insert the same book multiple times");
+      }
+      for(int i = 0; i < sorted.length; ++i)
+        insertOne(sorted[i]);
+      return;
+    }
+    
+    Book[] merged = sorted;
+    
+    // merges the books already on the shelf with the batch, both already in order
+    if(!isEmpty()) {
+      Book[] shelved = toSortedArray();
+      merged = new Book[shelved.length + sorted.length];
+      int i = 0;
+      int j = 0;
+      
+      for(int k = 0; k < merged.length; ++k) {
+        if(j == sorted.length) {
+          merged[k] = shelved[i++];
+        } else if(i == shelved.length) {
+          merged[k] = sorted[j++];
+        } else {
+          int val = comparator.compare(shelved[i], sorted[j]);
+          if(val == 0)
+            throw new IllegalArgumentException("Cannot insert the same book multiple times");
+          merged[k] = val < 0 ? shelved[i++] : sorted[j++];
+        }
+      }
+    }
+    
+    this.root = buildBalanced(merged, 0, merged.length);
+    this.size = merged.length;
+    this.path = null;
+    
+    if(pageCountIndex != null)
+      pageCountIndex.insertBooks(sorted);
+    if(titleIndex != null)
+      titleIndex.insertBooks(sorted);
+    if(idIndex != null) {
+      for(int i = 0; i < sorted.length; ++i)
+        idIndex.add(sorted[i]);
+    }
+  }
+  
+  /**
+   * Builds a height-optimal tree out of a range of sorted books owned by this bookshelf, building
+   * the two halves of a large range on separate threads
+   * 
+   * @param sorted an array of Book objects sorted by sortList
+   * @param from   the index of the first book in the range
+   * @param to     the index just past the last book in the range
+   * @return       the root of the new tree, null if the range is empty
+   */
+  private TreeNode<Book> buildBalanced(Book[] sorted, int from, int to) {
+    if(to - from < PARALLEL_THRESHOLD)
+      return buildRange(sorted, from, to, owner);
+    
+    return ForkJoinPool.commonPool().invoke(new BuildTask(sorted, from, to, owner));
+  }
+  
+  /**
+   * Builds a height-optimal tree out of a range of sorted books by making the middle one the root
+   * 
+   * @param sorted  an array of Book objects sorted by sortList
+   * @param from    the index of the first book in the range
+   * @param to      the index just past the last book in the range
+   * @param owner   Object the owner token to give every new node
+   * @return        the root of the new tree, null if the range is empty
+   */
+  private static TreeNode<Book> buildRange(Book[] sorted, int from, int to, Object owner) {
+    if(from >= to)
+      return null;
+    
+    int mid = (from + to) >>> 1;
+    TreeNode<Book> node = new TreeNode<Book>(sorted[mid], buildRange(sorted, from, mid, owner), 
+        buildRange(sorted, mid + 1, to, owner));
+    node.setOwner(owner);
+    return node;
+  }
+  
+  /**
+   * Helper method for inserting a book. Walks down from current with a single comparison per node
+   * and allocates one TreeNode only once the empty spot for the book has been found. A balanced
+   * bookshelf, or one that shares nodes since it was frozen, then retraces the walked path.
+   * 
+   * @param book     a Book object to be added
+   * @param current  TreeNode<Book> indicating the node to start searching from, must be this.root
+   *                 for a balanced or frozen bookshelf
+   * @throws         IllegalArgumentException if the book is already in the bookshelf
+   */
+  protected void insertBookHelper(Book book, TreeNode<Book> current) {
+    // only a plain bookshelf that has never been frozen can link the new node in place
+    boolean retracing = balanced || owner != null;
+    int depth = 0;
+    boolean left;
+    
+    // walks down until the child on the book's side is empty, remembering the path if needed
+    // throws before anything changes if the book is already in the bookshelf
+    while(true) {
+      if(retracing)
+        pushPath(current, depth++);
+      
+      int val = comparator.compare(book, current.getData());
+      if(val == 0)
+        throw new IllegalArgumentException("Cannot insert the same book multiple times");
+      
+      left = val < 0;
+      TreeNode<Book> next = left ? current.getLeft() : current.getRight();
+      if(next == null)
+        break;
+      current = next;
+    }
+    this.size += 1;
+    
+    if(retracing) {
+      retrace(depth, left, newNode(book));
+    } else if(left) {
+      current.setLeft(newNode(book));
+    } else {
+      current.setRight(newNode(book));
+    }
+  }
+  
+  /**
+   * Helper method for removing a book. Walks down to the book recording the path, and if its node
+   * has two children keeps walking to its successor, the leftmost node of its right subtree, which
+   * takes the removed book's place. Then walks back up relinking, copying shared nodes first, and
+   * rebalancing a balanced bookshelf. Stops as soon as a node is left in place with its height
+   * unchanged above the removed book's node.
+   * 
+   * @param book a Book object to be removed
+   * @return     the Book that was on the shelf, null if there was none
+   */
+  private Book removeBookHelper(Book book) {
+    int depth = 0;
+    TreeNode<Book> current = root;
+    
+    while(current != null) {
+      pushPath(current, depth++);
+      int val = comparator.compare(book, current.getData());
+      if(val == 0)
+        break;
+      current = val < 0 ? current.getLeft() : current.getRight();
+    }
+    if(current == null)
+      return null;
+    
+    int target = depth - 1;
+    Book removed = current.getData();
+    
+    // child replaces the last node on the path: the removed node, or the successor moving up
+    TreeNode<Book> child;
+    if(current.getLeft() != null && current.getRight() != null) {
+      for(TreeNode<Book> next = current.getRight(); next != null; next = next.getLeft())
+        pushPath(next, depth++);
+      child = path[depth - 1].getRight();
+    } else {
+      child = current.getLeft() != null ? current.getLeft() : current.getRight();
+    }
+    Book successor = path[depth - 1].getData();
+    this.size -= 1;
+    
+    for(int i = depth - 2; i >= 0; --i) {
+      TreeNode<Book> node = path[i];
+      int oldHeight = node.getHeight();
+      TreeNode<Book> subtree;
+      
+      // the removed node's replacement holds the successor's book, everything else is reused
+      if(i == target) {
+        subtree = new TreeNode<Book>(successor, node.getLeft(), node.getRight());
+        subtree.setHeight(oldHeight);
+        subtree.setOwner(owner);
+      } else {
+        subtree = writable(node);
+      }
+      
+      if(node.getLeft() == path[i + 1])
+        subtree.setLeft(child);
+      else
+        subtree.setRight(child);
+      
+      if(balanced)
+        subtree = rebalance(subtree);
+      
+      // the parent already points at an unchanged node whose height is the same, so everything
+      // above is done
+      if(i < target && subtree == node && (!balanced || subtree.getHeight() == oldHeight))
+        return removed;
+      
+      child = subtree;
+    }
+    
+    this.root = child;
+    return removed;
+  }
+  
+  /**
+   * Records a node on the insertion path, growing the reusable path array when needed
+   * 
+   * @param node  TreeNode<Book> the node reached at this depth
+   * @param depth int the depth of node, where the root has depth 0
+   */
+  private void pushPath(TreeNode<Book> node, int depth) {
+    if(path == null || depth == path.length) {
+      // generic arrays can't be created, so this one starts raw
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      TreeNode<Book>[] grown = (TreeNode<Book>[]) new TreeNode[Math.max(16, depth * 2)];
+      if(path != null)
+        System.arraycopy(path, 0, grown, 0, depth);
+      path = grown;
+    }
+    path[depth] = node;
+  }
+  
+  /**
+   * Walks back up the recorded insertion path linking in the new node. Shared nodes on the way are
+   * copied first, and a balanced bookshelf updates heights and rotates where needed. Stops as soon
+   * as a node is left in place with nothing above it to rebalance.
+   * 
+   * @param depth int the number of nodes recorded on the path
+   * @param left  boolean true if the new node goes left of the last node on the path
+   * @param child TreeNode<Book> the new node
+   */
+  private void retrace(int depth, boolean left, TreeNode<Book> child) {
+    boolean rebalancing = balanced;
+    
+    for(int i = depth - 1; i >= 0; --i) {
+      TreeNode<Book> node = path[i];
+      int oldHeight = node.getHeight();
+      TreeNode<Book> subtree = writable(node);
+      
+      // the old child on the path tells which side the new subtree goes on
+      if(i == depth - 1 ? left : node.getLeft() == path[i + 1])
+        subtree.setLeft(child);
+      else
+        subtree.setRight(child);
+      
+      // a rotation after an insert restores the subtree's old height, so either way nothing above
+      // needs rebalancing once a subtree rotates or keeps its height
+      if(rebalancing) {
+        TreeNode<Book> linked = subtree;
+        subtree = rebalance(linked);
+        if(subtree != linked || subtree.getHeight() == oldHeight)
+          rebalancing = false;
+      }
+      
+      // the parent already points at an unchanged node, so everything above is done
+      if(subtree == node && !rebalancing)
+        return;
+      
+      child = subtree;
+    }
+    
+    this.root = child;
+  }
+  
+  /**
+   * Restores the AVL property at a node whose children are both balanced
+   * 
+   * @param current TreeNode<Book> whose subtree may be out of balance by at most 2, must be writable
+   * @return        the root of current's subtree after rebalancing
+   */
+  protected TreeNode<Book> rebalance(TreeNode<Book> current) {
+    int balance = height(current.getLeft()) - height(current.getRight());
+    
+    // left side is too tall, rotates right (after a left rotation of a left-right kink)
+    if(balance > 1) {
+      if(height(current.getLeft().getLeft()) < height(current.getLeft().getRight()))
+        current.setLeft(rotateLeft(writable(current.getLeft())));
+      return rotateRight(current);
+    }
+    
+    // right side is too tall, rotates left (after a right rotation of a right-left kink)
+    if(balance < -1) {
+      if(height(current.getRight().getRight()) < height(current.getRight().getLeft()))
+        current.setRight(rotateRight(writable(current.getRight())));
+      return rotateLeft(current);
+    }
+    
+    updateHeight(current);
+    return current;
+  }
+  
+  /**
+   * Rotates a subtree to the left, making (a writable copy of) the right child its new root
+   * 
+   * @param current TreeNode<Book> the root of the subtree, must be writable with a right child
+   * @return        the new root of the subtree
+   */
+  private TreeNode<Book> rotateLeft(TreeNode<Book> current) {
+    TreeNode<Book> newRoot = writable(current.getRight());
+    current.setRight(newRoot.getLeft());
+    newRoot.setLeft(current);
+    updateHeight(current);
+    updateHeight(newRoot);
+    return newRoot;
+  }
+  
+  /**
+   * Rotates a subtree to the right, making (a writable copy of) the left child its new root
+   * 
+   * @param current TreeNode<Book> the root of the subtree, must be writable with a left child
+   * @return        the new root of the subtree
+   */
+  private TreeNode<Book> rotateRight(TreeNode<Book> current) {
+    TreeNode<Book> newRoot = writable(current.getLeft());
+    current.setLeft(newRoot.getRight());
+    newRoot.setRight(current);
+    updateHeight(current);
+    updateHeight(newRoot);
+    return newRoot;
+  }
+  
+  /**
+   * Throws if this bookshelf is a snapshot, called before anything changes
+   * 
+   * @throws UnsupportedOperationException if this bookshelf is read-only
+   */
+  private void checkWritable() {
+    if(readOnly)
+      throw new UnsupportedOperationException("A bookshelf snapshot cannot be changed");
+  }
+  
+  /**
+   * Freezes every node currently in the bookshelf. The bookshelf takes a new owner token, which no
+   * node created before can hold however many times bookshelves are frozen, so from now on it
+   * copies any of those nodes before changing it and never changes them in place. Any reader that
+   * got hold of the current tree may then keep using it without locks.
+   */
+  protected void freeze() {
+    this.owner = new Object();
+  }
+  
+  /**
+   * Creates a new node owned by this bookshelf
+   * 
+   * @param book a Book object to put in the node
+   * @return     a TreeNode<Book> with this bookshelf's current owner token
+   */
+  private TreeNode<Book> newNode(Book book) {
+    TreeNode<Book> node = new TreeNode<Book>(book);
+    node.setOwner(owner);
+    return node;
+  }
+  
+  /**
+   * Gets a node that this bookshelf may change in place: the node itself if the bookshelf owns it,
+   * otherwise a copy with the same book, children and height
+   * 
+   * @param node TreeNode<Book> a node in this bookshelf
+   * @return     node, or a writable copy of it that the caller must link in instead
+   */
+  private TreeNode<Book> writable(TreeNode<Book> node) {
+    if(node.getOwner() == owner)
+      return node;
+    
+    TreeNode<Book> copy = new TreeNode<Book>(node.getData(), node.getLeft(), node.getRight());
+    copy.setHeight(node.getHeight());
+    copy.setOwner(owner);
+    return copy;
+  }
+  
+  /**
+   * Recomputes the height of a node from the heights of its children
+   * 
+   * @param current TreeNode<Book> the node to update
+   */
+  private void updateHeight(TreeNode<Book> current) {
+    current.setHeight(1 + Math.max(height(current.getLeft()), height(current.getRight())));
+  }
+  
+  /**
+   * Null-safe height of a subtree
+   * 
+   * @param current TreeNode<Book> the root of the subtree, may be null
+   * @return        0 if current is null, current's height otherwise
+   */
+  private static int height(TreeNode<Book> current) {
+    return current == null ? 0 : current.getHeight();
+  }
+  
+  // accessors
+  /**
+   * Checks for a Book to see if this BinaryBookshelf contains it
+   * 
+   * Complexity = O(logN)
+   * 
+   * @param book a Book object that is trying to be found
+   * @return true if found, false otherwise
+   */
+  public boolean contains(Book book) {
+    return containsHelper(book, getRoot());
+  }
+  
+  /**
+   * Helper method that does the searching and finding of the Book object. Walks down from current
+   * with a single comparison per node, so the depth of the bookshelf never limits the search.
+   * 
+   * @param book     a Book object that is trying to be found
+   * @param current  TreeNode<Book> indicating the node to start searching from
+   * @return true if found, false otherwise
+   */
+  protected boolean containsHelper(Book book, TreeNode<Book> current) {
+    // a comparison of 0 means every attribute matches, which is exactly Book.equals
+    while(current != null) {
+      int val = comparator.compare(book, current.getData());
+      
+      if(val == 0)
+        return true;
+      
+      current = val < 0 ? current.getLeft() : current.getRight();
+    }
+    
+    // ran off the bottom of the bookshelf without finding the book
+    return false;
+  }
+
+  /**
+   * Checks for many books at once. The probes are sorted by sortList and the bookshelf is walked
+   * once, each node taking the run of sorted probes that could be under it and splitting it at its
+   * own book between its two children. A node on the path of many probes is compared once per
+   * split instead of once per probe, and subtrees no probe falls in are never entered.
+   * 
+   * Complexity = O(MlogM + min(N, MlogN)logM) for M probes
+   * 
+   * @param books a Collection of Book objects that are trying to be found
+   * @return      an array with true at each position whose book was found, in the order books
+   *              iterates
+   */
+  public boolean[] containsBooks(Collection<? extends Book> books) {
+    return containsBooks(books.toArray(new Book[books.size()]));
+  }
+  
+  /**
+   * Checks for many books at once, see containsBooks(Collection). The array isn't changed.
+   * 
+   * @param books an array of Book objects that are trying to be found
+   * @return      an array with true at each index whose book was found
+   */
+  public boolean[] containsBooks(Book[] books) {
+    Book[] sorted = books.clone();
+    Arrays.parallelSort(sorted, comparator);
+    boolean[] sortedFound = containsSortedHelper(sorted, getRoot());
+    
+    // each probe takes the answer of an equal probe in the sorted copy
+    boolean[] found = new boolean[books.length];
+    for(int i = 0; i < books.length; ++i)
+      found[i] = sortedFound[Arrays.binarySearch(sorted, books[i], comparator)];
+    
+    return found;
+  }
+  
+  /**
+   * Helper method that finds sorted probes with one walk of the tree. Keeps its own stack of
+   * subtrees with their runs of probes, so the depth of the bookshelf never limits the walk.
+   * 
+   * @param sorted  an array of Book objects sorted by sortList
+   * @param current TreeNode<Book> the root of the tree to search
+   * @return        an array with true at each index of sorted whose book was found
+   */
+  private boolean[] containsSortedHelper(Book[] sorted, TreeNode<Book> current) {
+    boolean[] found = new boolean[sorted.length];
+    // subtrees still to search, each with the run of probes [from, to) that falls in it
+    ArrayDeque<TreeNode<Book>> nodes = new ArrayDeque<TreeNode<Book>>();
+    int[] runs = new int[32];
+    int pending = 0;
+    
+    int from = 0;
+    int to = sorted.length;
+    while(true) {
+      if(current != null && from < to) {
+        Book book = current.getData();
+        
+        // splits the run into probes before the node's book, equal to it, and after it
+        int low = from;
+        int high = to;
+        while(low < high) {
+          int mid = (low + high) >>> 1;
+          if(comparator.compare(sorted[mid], book) < 0)
+            low = mid + 1;
+          else
+            high = mid;
+        }
+        int equal = low;
+        while(equal < to && comparator.compare(sorted[equal], book) == 0)
+          found[equal++] = true;
+        
+        // searches the left subtree next and comes back for the right one
+        if(equal < to && current.getRight() != null) {
+          if(pending * 2 == runs.length)
+            runs = Arrays.copyOf(runs, runs.length * 2);
+          nodes.push(current.getRight());
+          runs[pending * 2] = equal;
+          runs[pending * 2 + 1] = to;
+          pending++;
+        }
+        current = current.getLeft();
+        to = low;
+      } else if(pending > 0) {
+        pending--;
+        current = nodes.pop();
+        from = runs[pending * 2];
+        to = runs[pending * 2 + 1];
+      } else {
+        return found;
+      }
+    }
+  }
+
+  /**
+   * Checks whether this bookshelf keeps itself height balanced
+   * 
+   * @return this.balanced true if this bookshelf is an AVL tree, false if it is a plain BST
+   */
+  public boolean isBalanced() {
+    return this.balanced;
+  }
+  
+  /**
+   * Returns a copy of the sortList this bookshelf is ordered by
+   * 
+   * @return an array of the 4 Attributes in the order books are compared by
+   */
+  public Attribute[] getSortList() {
+    return this.sortList.clone();
+  }
+  
+  /**
+   * Returns the order in which books will be compared and placed
+   * 
+   * @return returnString a formatted String representing the order of the Attributes
+   */
+  public String getAttributeOrder() {
+    String returnString = "";
+    
+    // iterates throught sortList and formats returnString
+    for(int i = 0; i < sortList.length; ++i) {
+      returnString = returnString + (i + 1) + ":" + sortList[i];
+      
+      if(i != 3)
+        returnString = returnString + " ";
+    }
+    
+    return returnString;
+  }
+  
+  /**
+   * Creates an ArrayList containing all books in the bookshelf that have the same author
+   * 
+   * Complexity = O(logN + K), where K is the number of books by the author
+   * 
+   * @param authorName a String representing which author's books are being looked for
+   * 
+   * @return authorBooks an ArrayList containing all books by the same author, in shelf order
+   */
+  public ArrayList<Book> getBooksByAuthor(String authorName) {
+    ArrayList<Book> authorBooks = new ArrayList<Book>();
+    forEachByAuthor(authorName, authorBooks::add);
+    return authorBooks;
+  }
+  
+  /**
+   * Gives every book in the bookshelf by an author to a sink, in shelf order, without collecting
+   * them first. Nothing is allocated per book or per node visited, so a caller that counts,
+   * streams out or fills its own pre-sized collection pays for nothing else.
+   * 
+   * Complexity = O(logN + K), where K is the number of books by the author
+   * 
+   * @param authorName a String representing which author's books are being looked for
+   * @param sink       Consumer<? super Book> to receive each book by the author
+   */
+  public void forEachByAuthor(String authorName, Consumer<? super Book> sink) {
+    getBooksByAuthorHelper(authorName, getRoot(), sink);
+  }
+  
+  /**
+   * Helper method that searches for the author's books and gives them to a sink. AUTHOR is always
+   * the first Attribute in sortList, so all of an author's books form one contiguous in-order run.
+   * This descends to the first book in that run and walks in order only until the run ends.
+   * 
+   * @param authorName  String representing the name of the author's books being search
+   * @param current     TreeNode<Book> representing the root of the subtree to search
+   * @param sink        Consumer<? super Book> to receive each book by the author, in order
+   */
+  protected void getBooksByAuthorHelper(String authorName, TreeNode<Book> current, 
+      Consumer<? super Book> sink) {
+    rangeHelper(current, book -> book.getAuthor().compareTo(authorName), sink);
+  }
+  
+  /**
+   * Creates an ArrayList containing every book that passes a test. A large bookshelf is split into
+   * subtrees that are scanned on separate threads, each collecting its own matches, and the
+   * matches are copied once into a list sized to hold them all.
+   * 
+   * A balanced bookshelf splits until each subtree's height shows it is small. A plain BST doesn't
+   * keep heights, so it splits by halving its size at each level instead, and one that is skewed,
+   * such as one built by inserting sorted books one at a time, may end up scanned mostly on one
+   * thread.
+   * 
+   * Complexity = O(N), spread across every core for large balanced bookshelves
+   * 
+   * @param filter Predicate<? super Book> that is true for the books to keep, which may be called
+   *               from several threads at once
+   * @return       an ArrayList of the books that passed, in shelf order
+   */
+  public ArrayList<Book> filter(Predicate<? super Book> filter) {
+    ScanTask scan = scan(filter);
+    ArrayList<Book> matches = new ArrayList<Book>(scan.count);
+    scan.drainTo(matches);
+    return matches;
+  }
+  
+  /**
+   * Gives every book to an action, splitting a large bookshelf into subtrees handled on separate
+   * threads. Unlike forEach, the books are not given in order. A skewed plain BST may not split
+   * well, see filter.
+   * 
+   * Complexity = O(N), spread across every core for large balanced bookshelves
+   * 
+   * @param action Consumer<? super Book> to receive each book, which may be called from several
+   *               threads at once
+   */
+  public void parallelForEach(Consumer<? super Book> action) {
+    scan(book -> {
+      action.accept(book);
+      return false;
+    });
+  }
+  
+  /**
+   * Tests every book on the bookshelf, on several threads if it is large
+   * 
+   * @param filter Predicate<? super Book> to test each book with
+   * @return       the finished ScanTask holding the books that passed
+   */
+  private ScanTask scan(Predicate<? super Book> filter) {
+    ScanTask scan = new ScanTask(getRoot(), size(), balanced, filter);
+    
+    if(size() < PARALLEL_THRESHOLD)
+      scan.compute();
+    else
+      ForkJoinPool.commonPool().invoke(scan);
+    
+    return scan;
+  }
+  
+  /**
+   * Creates an ArrayList containing all books with a page count in a range, from a secondary index
+   * ordered by page count. The index is built the first time it is needed and kept up to date by
+   * every insert after that.
+   * 
+   * Complexity = O(logN + K), where K is the number of books in the range, plus O(NlogN) once to
+   *              build the index
+   * 
+   * @param minPages int the fewest pages a book in the range may have
+   * @param maxPages int the most pages a book in the range may have
+   * @return         an ArrayList of the books in the range, by page count and then by sortList
+   */
+  public ArrayList<Book> getBooksByPageCount(int minPages, int maxPages) {
+    ArrayList<Book> books = new ArrayList<Book>();
+    forEachByPageCount(minPages, maxPages, books::add);
+    return books;
+  }
+  
+  /**
+   * Gives every book with a page count in a range to a sink, in the same order as
+   * getBooksByPageCount, without collecting them first
+   * 
+   * Complexity = O(logN + K), where K is the number of books in the range, plus O(NlogN) once to
+   *              build the index
+   * 
+   * @param minPages int the fewest pages a book in the range may have
+   * @param maxPages int the most pages a book in the range may have
+   * @param sink     Consumer<? super Book> to receive each book in the range
+   */
+  public void forEachByPageCount(int minPages, int maxPages, Consumer<? super Book> sink) {
+    if(minPages > maxPages)
+      return;
+    
+    rangeHelper(getIndex(Attribute.PAGECOUNT).getRoot(), book -> 
+        book.getPageCount() < minPages ? -1 : book.getPageCount() > maxPages ? 1 : 0, sink);
+  }
+  
+  /**
+   * Creates an ArrayList containing all books whose title starts with a prefix, from a secondary
+   * index ordered by title. Titles starting with the prefix sort right after the prefix itself, so
+   * they form one contiguous run. The index is built the first time it is needed and kept up to
+   * date by every insert after that.
+   * 
+   * Complexity = O(logN + K), where K is the number of matching books, plus O(NlogN) once to build
+   *              the index
+   * 
+   * @param prefix String the start every returned title shares, "" for every book
+   * @return       an ArrayList of the matching books, by title and then by sortList
+   */
+  public ArrayList<Book> getBooksByTitlePrefix(String prefix) {
+    ArrayList<Book> books = new ArrayList<Book>();
+    forEachByTitlePrefix(prefix, books::add);
+    return books;
   }
   
-  // mutators
   /**
-   * Clears the BinaryBookshelf
+   * Gives every book whose title starts with a prefix to a sink, in the same order as
+   * getBooksByTitlePrefix, without collecting them first
+   * 
+   * Complexity = O(logN + K), where K is the number of matching books, plus O(NlogN) once to build
+   *              the index
+   * 
+   * @param prefix String the start every given title shares, "" for every book
+   * @param sink   Consumer<? super Book> to receive each matching book
    */
-  public void clear() {
-    this.root = null;
-    this.size = 0;
+  public void forEachByTitlePrefix(String prefix, Consumer<? super Book> sink) {
+    rangeHelper(getIndex(Attribute.TITLE).getRoot(), book -> 
+        book.getTitle().startsWith(prefix) ? 0 : book.getTitle().compareTo(prefix) < 0 ? -1 : 1, 
+        sink);
   }
   
   /**
-   * Inserts a book into the BinaryBookshelf
+   * Gets one page of the bookshelf in shelf order. The first page is asked for with a null cursor
+   * and each later one with the cursor of the page before it. The cursor holds the sort key of
+   * that page's last book, so the next page starts with one descent to the first book after it
+   * instead of walking past every earlier page, and books added or removed meanwhile neither
+   * repeat nor skip a book that was there the whole time.
    * 
-   * @param book a Book object to be added
+   * Complexity = O(logN + P), where P is the page size
+   * 
+   * @param cursor   String the cursor of the previous page, null for the first page
+   * @param pageSize int the most books the page may hold
+   * @throws         IllegalArgumentException if pageSize is below 1 or the cursor is not valid
+   * @return         a BookPage holding the next books and the cursor after them
    */
-  public void insertBook(Book book) {
-    // if there is no root, adds book as root, else calls insetBookHelper
-    if(this.root == null) {
-      root = new TreeNode<Book>(book);
-      this.size += 1;
+  public BookPage getPage(String cursor, int pageSize) {
+    return pageHelper(getRoot(), book -> 0, cursor, pageSize);
+  }
+  
+  /**
+   * Gets one page of the books by an author, in shelf order, the same way getPage does
+   * 
+   * Complexity = O(logN + P), where P is the page size
+   * 
+   * @param authorName a String representing which author's books are being looked for
+   * @param cursor     String the cursor of the previous page of this author, null for the first
+   * @param pageSize   int the most books the page may hold
+   * @throws           IllegalArgumentException if pageSize is below 1 or the cursor is not valid
+   * @return           a BookPage holding the author's next books and the cursor after them
+   */
+  public BookPage getBooksByAuthorPage(String authorName, String cursor, int pageSize) {
+    return pageHelper(getRoot(), book -> book.getAuthor().compareTo(authorName), cursor, 
+        pageSize);
+  }
+  
+  /**
+   * Finds a book by its ID from a hash index of the whole bookshelf. The index is built the first
+   * time it is needed and kept up to date by every insert after that. IDs are only unique within
+   * one BookIdAllocator, so if books from different allocators share an ID, this finds the one
+   * that was indexed first.
+   * 
+   * Complexity = O(1), plus O(N) once to build the index
+   * 
+   * @param id int the ID of the book
+   * @return   the book with that ID, null if there is none on the shelf
+   */
+  public Book getById(int id) {
+    return getIdIndex().get(id);
+  }
+  
+  /**
+   * Gets the ID index, building it from the books on the shelf if this is the first time it is
+   * needed
+   * 
+   * @return a BookIdIndex of every book on the shelf
+   */
+  protected BookIdIndex getIdIndex() {
+    BookIdIndex index = idIndex;
+    if(index != null)
+      return index;
+    
+    index = new BookIdIndex(size());
+    for(Book book : this)
+      index.add(book);
+    idIndex = index;
+    return index;
+  }
+  
+  /**
+   * Gets the ID index if it has been built, without building it
+   * 
+   * @return the ID index, null if it hasn't been needed yet
+   */
+  protected BookIdIndex peekIdIndex() {
+    return this.idIndex;
+  }
+  
+  /**
+   * Gets the secondary index for an Attribute, building it from the books on the shelf if this is
+   * the first time it is needed
+   * 
+   * @param attribute Attribute.PAGECOUNT or Attribute.TITLE
+   * @throws          IllegalArgumentException if there is no index for attribute
+   * @return          a balanced BinaryBookshelf of the same books ordered by attribute first
+   */
+  protected BinaryBookshelf getIndex(Attribute attribute) {
+    BinaryBookshelf index = peekIndex(attribute);
+    if(index != null)
+      return index;
+    
+    Comparator<Book> order;
+    if(attribute == Attribute.PAGECOUNT) {
+      order = (one, two) -> {
+        int val = Integer.compare(one.getPageCount(), two.getPageCount());
+        return val != 0 ? val : comparator.compare(one, two);
+      };
+    } else if(attribute == Attribute.TITLE) {
+      order = (one, two) -> {
+        int val = one.getTitle().compareTo(two.getTitle());
+        return val != 0 ? val : comparator.compare(one, two);
+      };
     } else {
-      insertBookHelper(book, root);
+      throw new IllegalArgumentException("There is no index on " + attribute);
     }
+    
+    // the books are already known to be distinct, so the bulk load only sorts them
+    index = new BinaryBookshelf(this, order);
+    index.insertBooks(toSortedArray());
+    if(attribute == Attribute.PAGECOUNT)
+      pageCountIndex = index;
+    else
+      titleIndex = index;
+    return index;
   }
   
   /**
-   * Helper method for inserting a book
+   * Gets a secondary index if it has been built, without building it
    * 
-   * @param book     a Book object to be added
-   * @param current  TreeNode<Book> indicating the current node
-   */
-  protected void insertBookHelper(Book book, TreeNode<Book> current) {   
-    // creates new TreeNode<Book> with the book
-    TreeNode<Book> newBook = new TreeNode<Book>(book);
-    
-    // checks left if this book is smaller than current's book
-    // else if this book is bigger than current, checks right
-    if(compareToHelper(book, current.getData()) < 0) {
-      // if current does has a left child, recursive call with left child as current
-      // else sets this book as left child
-      if(current.getLeft() != null) {
-        insertBookHelper(book, current.getLeft());
+   * @param attribute Attribute.PAGECOUNT or Attribute.TITLE
+   * @return          the index, null if it hasn't been needed yet
+   */
+  protected BinaryBookshelf peekIndex(Attribute attribute) {
+    return attribute == Attribute.PAGECOUNT ? pageCountIndex 
+        : attribute == Attribute.TITLE ? titleIndex : null;
+  }
+  
+  /**
+   * Helper method that gives one contiguous in-order run of a tree to a sink. Descends to the
+   * first book in the run and walks in order only until the run ends, keeping the nodes still to
+   * visit on one stack, so the only allocation is the stack itself.
+   * 
+   * @param current  TreeNode<Book> the root of a tree ordered so the run is contiguous
+   * @param position ToIntFunction<Book> giving negative for books before the run, 0 for books in
+   *                 it and positive for books after it
+   * @param sink     Consumer<? super Book> to receive the books in the run, in order
+   */
+  private static void rangeHelper(TreeNode<Book> current, ToIntFunction<Book> position, 
+      Consumer<? super Book> sink) {
+    ArrayDeque<TreeNode<Book>> pending = new ArrayDeque<TreeNode<Book>>();
+    
+    while(current != null) {
+      if(position.applyAsInt(current.getData()) < 0) {
+        current = current.getRight();
       } else {
-        current.setLeft(newBook);
-        this.size += 1;
+        pending.push(current);
+        current = current.getLeft();
       }
-    } else if(compareToHelper(book, current.getData()) > 0) {
-      // if current does has a right child, recursive call with right child as current
-      // else sets this book as right child
-      if(current.getRight() != null) {
-        insertBookHelper(book, current.getRight());
+    }
+    
+    while(!pending.isEmpty()) {
+      TreeNode<Book> next = pending.pop();
+      if(position.applyAsInt(next.getData()) > 0)
+        break;
+      
+      sink.accept(next.getData());
+      for(current = next.getRight(); current != null; current = current.getLeft())
+        pending.push(current);
+    }
+  }
+  
+  /**
+   * Helper method that gets one page of a contiguous in-order run of a tree. Descends to the first
+   * book in the run that sorts after the cursor's book, then walks in order until the page is
+   * full or the run ends.
+   * 
+   * @param current  TreeNode<Book> the root of a tree ordered so the run is contiguous
+   * @param position ToIntFunction<Book> giving negative for books before the run, 0 for books in
+   *                 it and positive for books after it
+   * @param cursor   String the cursor of the previous page, null to start at the run's beginning
+   * @param pageSize int the most books the page may hold
+   * @throws         IllegalArgumentException if pageSize is below 1 or the cursor is not valid
+   * @return         a BookPage of the books, with a cursor if the run goes on past them
+   */
+  private BookPage pageHelper(TreeNode<Book> current, ToIntFunction<Book> position, 
+      String cursor, int pageSize) {
+    if(pageSize < 1)
+      throw new IllegalArgumentException("pageSize must be at least 1");
+    
+    Book after = cursor == null ? null : decodeCursor(cursor);
+    ArrayDeque<TreeNode<Book>> pending = new ArrayDeque<TreeNode<Book>>();
+    
+    // a book can start the page if it is not before the run and is after the cursor, which only
+    // ever goes from false to true in order, so one descent finds the first such book
+    while(current != null) {
+      Book book = current.getData();
+      if(position.applyAsInt(book) < 0 || (after != null && comparator.compare(book, after) <= 0)) {
+        current = current.getRight();
       } else {
-        current.setRight(newBook);
-        this.size += 1;
+        pending.push(current);
+        current = current.getLeft();
       }
     }
+    
+    ArrayList<Book> books = new ArrayList<Book>(Math.min(pageSize, size()));
+    while(!pending.isEmpty() && position.applyAsInt(pending.peek().getData()) == 0) {
+      // a book left in the run after a full page means there is another page
+      if(books.size() == pageSize)
+        return new BookPage(books, encodeCursor(books.get(pageSize - 1)));
+      
+      TreeNode<Book> next = pending.pop();
+      books.add(next.getData());
+      for(current = next.getRight(); current != null; current = current.getLeft())
+        pending.push(current);
+    }
+    
+    return new BookPage(books, null);
   }
   
-  // accessors
   /**
-   * Recursively checks for a Book to see if this BinaryBookshelf contains it
+   * Writes a book's sort key, which is every Attribute of it, into a URL-safe Base64 cursor
    * 
-   * Complexity = O(logN)
+   * @param book Book the last book of a page
+   * @return     the cursor
+   */
+  private static String encodeCursor(Book book) {
+    String title = book.getTitle();
+    String last = book.getAuthorLastname();
+    String first = book.getAuthorFirstname();
+    ByteBuffer key = ByteBuffer.allocate(20 + 2 * (length(title) + length(last) + length(first)));
+    
+    key.putInt(book.ID);
+    key.putInt(book.getPageCount());
+    putString(key, title);
+    putString(key, last);
+    putString(key, first);
+    
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(key.array());
+  }
+  
+  /**
+   * Reads a cursor back into a book with the same sort key as the one it was made from
    * 
-   * @param book a Book object that is trying to be found
-   * @return true if found, false otherwise
+   * @param cursor String made by encodeCursor
+   * @throws       IllegalArgumentException if the cursor is not valid
+   * @return       a Book that compares equal to the cursor's book
    */
-  public boolean contains(Book book) {
-    return containsHelper(book, getRoot());
+  private static Book decodeCursor(String cursor) {
+    try {
+      ByteBuffer key = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+      int id = key.getInt();
+      int pageCount = key.getInt();
+      String title = getString(key);
+      String last = getString(key);
+      String first = getString(key);
+      if(key.hasRemaining())
+        throw new IllegalArgumentException("Invalid cursor");
+      
+      return new Book(id, title, pageCount, last, first);
+    } catch(BufferUnderflowException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
   }
   
   /**
-   * Helper method that does the searching and finding of the Book object
+   * Gets the number of chars a String takes up in a cursor
    * 
-   * @param book     a Book object that is trying to be found
-   * @param current  TreeNode<Book> indicating the current node
-   * @return true if found, false otherwise
+   * @param string String to measure, may be null
+   * @return       the length of string, 0 if it is null
    */
-  protected boolean containsHelper(Book book, TreeNode<Book> current) {
-    // if current has no Book, it can't be the book
-    if(current == null) 
-      return false;
+  private static int length(String string) {
+    return string == null ? 0 : string.length();
+  }
+  
+  /**
+   * Writes a String into a cursor as its length and then its chars, with a length of -1 for null
+   * 
+   * @param key    ByteBuffer with room for the String
+   * @param string String to write, may be null
+   */
+  private static void putString(ByteBuffer key, String string) {
+    if(string == null) {
+      key.putInt(-1);
+      return;
+    }
     
-    // checks to see if this book is the right book
-    // else compares this book to the book trying to be found
-    // goes left or right depending on the value returned
-    if(book.equals(current.getData()))
-      return true;
-    else if(compareToHelper(book, current.getData()) < 0)
-      return containsHelper(book, current.getLeft());
-    else
-      return containsHelper(book, current.getRight());
+    key.putInt(string.length());
+    for(int i = 0; i < string.length(); ++i)
+      key.putChar(string.charAt(i));
   }
-
+  
   /**
-   * Returns the order in which books will be compared and placed
+   * Reads a String written by putString
    * 
-   * @return returnString a formatted String representing the order of the Attributes
+   * @param key ByteBuffer positioned at the String
+   * @throws    IllegalArgumentException if the length is not valid
+   * @return    the String, or null
    */
-  public String getAttributeOrder() {
-    String returnString = "";
+  private static String getString(ByteBuffer key) {
+    int length = key.getInt();
+    if(length == -1)
+      return null;
+    if(length < 0 || length > key.remaining() / 2)
+      throw new IllegalArgumentException("Invalid cursor");
     
-    // iterates throught sortList and formats returnString
-    for(int i = 0; i < sortList.length; ++i) {
-      returnString = returnString + (i + 1) + ":" + sortList[i];
-      
-      if(i != 3)
-        returnString = returnString + " ";
-    }
+    char[] chars = new char[length];
+    for(int i = 0; i < length; ++i)
+      chars[i] = key.getChar();
+    return new String(chars);
+  }
+  
+  /**
+   * Copies every book in the bookshelf into an array, in order
+   * 
+   * @return an array of all books in the bookshelf, sorted by sortList
+   */
+  private Book[] toSortedArray() {
+    ArrayList<Book> books = new ArrayList<Book>(size());
     
-    return returnString;
+    for(Book book : this)
+      books.add(book);
+    
+    return books.toArray(new Book[books.size()]);
   }
   
   /**
-   * Creates an ArrayList containing all books in the bookshelf that have the same author
+   * Creates an Iterator over the bookshelf that returns the books in order, using one stack array
    * 
-   * @param authorName a String representing which author's books are being looked for
+   * @return an Iterator<Book> over the bookshelf
+   */
+  @Override
+  public Iterator<Book> iterator() {
+    return new InOrderSpliterator<Book>(getRoot(), size(), comparator);
+  }
+  
+  /**
+   * Creates a Spliterator over the bookshelf that returns the books in order and splits along
+   * subtrees, so a parallel stream spreads the bookshelf across threads without copying it
    * 
-   * @return authorBooks an ArrayList containing all books by the same author
+   * @return a Spliterator<Book> over the bookshelf
    */
-  public ArrayList<Book> getBooksByAuthor(String authorName) {
-    // returns an empty ArrayList if the bookshelf is empty
-    if(isEmpty())
-      return new ArrayList<Book>();
+  @Override
+  public Spliterator<Book> spliterator() {
+    return new InOrderSpliterator<Book>(getRoot(), size(), comparator);
+  }
+  
+  /**
+   * Creates a sequential Stream of the books in order, call parallel() on it to spread the work
+   * 
+   * @return a Stream<Book> over the bookshelf
+   */
+  public Stream<Book> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+  
+  /**
+   * Takes an immutable snapshot of the bookshelf in O(1). The snapshot shares every node with this
+   * bookshelf, which freezes them: later inserts here copy only their own root-to-leaf path and
+   * never change a node the snapshot can reach. Readers may walk the snapshot without any locks
+   * while this bookshelf keeps changing.
+   * 
+   * Complexity = O(1)
+   * 
+   * @return a read-only BinaryBookshelf holding exactly the books in this one right now
+   */
+  public BinaryBookshelf snapshot() {
+    // a snapshot never changes, so it can stand in for its own snapshots
+    if(readOnly)
+      return this;
     
-    return getBooksByAuthorHelper(authorName, root);
+    freeze();
+    BinaryBookshelf pages = pageCountIndex;
+    BinaryBookshelf titles = titleIndex;
+    return new BinaryBookshelf(this, root, size, pages == null ? null : pages.snapshot(), 
+        titles == null ? null : titles.snapshot());
   }
   
   /**
-   * Helper method that searches for the author's books and returns an ArrayList
+   * Checks whether this bookshelf is a snapshot that can't be changed
    * 
-   * @param authorName  String representing the name of the author's books being search
-   * @param current     TreeNode<Book> representing the current book
-   * @return            authorBooks an ArrayList with all books by the author
+   * @return this.readOnly true if this bookshelf is read-only, false otherwise
    */
-  protected ArrayList<Book> getBooksByAuthorHelper(String authorName, TreeNode<Book> current) {
-    // ArrayList that will hold all the author's books
-    ArrayList<Book> authorBooks = new ArrayList<Book>();
-
-    // this node's book's author is the same one as the one being searched, adds it to authorBooks
-    if(current.getData().getAuthor().equals(authorName)) {
-      authorBooks.add(current.getData());
-    }
+  public boolean isReadOnly() {
+    return this.readOnly;
+  }
+  
+  /**
+   * Creates a new balanced bookshelf holding every book on this bookshelf and another with the
+   * same sortList. Both are read in order once and merged like the merge step of merge sort,
+   * splitting large merges across threads, and the result is built straight into a height-optimal
+   * tree. Neither bookshelf is changed.
+   * 
+   * Complexity = O(N + M)
+   * 
+   * @param other      a BinaryBookshelf with the same sortList
+   * @param duplicates DuplicatePolicy saying which Book object to keep when both bookshelves hold
+   *                   the same book, or to reject the merge
+   * @throws           IllegalArgumentException if the sortLists differ, or a book is on both
+   *                   bookshelves and duplicates is REJECT
+   * @return           a new, balanced BinaryBookshelf with the books of both
+   */
+  public BinaryBookshelf union(BinaryBookshelf other, DuplicatePolicy duplicates) {
+    if(!Arrays.equals(sortList, other.sortList))
+      throw new IllegalArgumentException("Both bookshelves must have the same sortList");
     
-    // searches left if this node has a left child and adds all books that have the author
-    if(current.getLeft() != null) {
-      authorBooks.addAll(getBooksByAuthorHelper(authorName, current.getLeft()));
-    }
+    Book[] first = toSortedArray();
+    Book[] second = other.toSortedArray();
+    
+    // every book gets a slot, and the second of two duplicates leaves its slot null
+    Book[] merged = new Book[first.length + second.length];
+    MergeTask merge = new MergeTask(first, 0, first.length, second, 0, second.length, merged, 
+        comparator, duplicates);
+    if(merged.length < PARALLEL_THRESHOLD)
+      merge.merge();
+    else
+      ForkJoinPool.commonPool().invoke(merge);
     
-    // searches right if this node has a right child and adds all books that have the author
-    if(current.getRight() != null) {
-      authorBooks.addAll(getBooksByAuthorHelper(authorName, current.getRight()));
+    int count = 0;
+    for(int i = 0; i < merged.length; ++i) {
+      if(merged[i] != null)
+        merged[count++] = merged[i];
     }
-     
-    return authorBooks;
+    
+    BinaryBookshelf union = new BinaryBookshelf(sortList, true);
+    union.root = union.buildBalanced(merged, 0, count);
+    union.size = count;
+    return union;
+  }
+  
+  /**
+   * Creates a new bookshelf holding the same books ordered by another sortList. The books are
+   * copied out in order, sorted on every core with the new sortList's comparator, and built
+   * straight into a height-optimal tree, so no book is inserted one at a time. This bookshelf is
+   * not changed.
+   * 
+   * Complexity = O(NlogN)
+   * 
+   * @param sortList an array of Attributes that will determine how the new bookshelf is sorted
+   * @throws         IllegalArgumentException if the sortList is invalid
+   * @return         a new BinaryBookshelf with the same books and balancing, sorted by sortList
+   */
+  public BinaryBookshelf sortedBy(Attribute[] sortList) {
+    BinaryBookshelf sorted = new BinaryBookshelf(sortList, balanced);
+    Book[] books = toSortedArray();
+    
+    if(!Arrays.equals(this.sortList, sorted.sortList))
+      Arrays.parallelSort(books, sorted.comparator);
+    
+    sorted.root = sorted.buildBalanced(books, 0, books.length);
+    sorted.size = books.length;
+    return sorted;
   }
   
   /**
@@ -221,31 +1515,102 @@ public class BinaryBookshelf {
    * @return    val an int representing how the books compare to each other
    */
   public int compareToHelper(Book one, Book two) throws IllegalArgumentException {
-    int val = 0;
+    int val = comparator.compare(one, two);
     
-    // compares book's author, if they are the same, goes through sortList and compares the books
     // if all Attributes in sortList are the same, then the books are the same
-    if(one.getAuthor().equals(two.getAuthor())) {
-      if(one.compareTo(two, sortList[1]) == 0) {
-        if(one.compareTo(two, sortList[2]) == 0) {
-          if(one.compareTo(two, sortList[3]) == 0) {
-            throw new IllegalArgumentException("Cannot insert the same book multiple times");
-          }
-        } else {
-          val = one.compareTo(two, sortList[2]);
-        }
-      } else {
-        val = one.compareTo(two, sortList[1]);
-      }
-    } else {
-      val = one.compareTo(two, Attribute.AUTHOR);
-    }
+    if(val == 0)
+      throw new IllegalArgumentException("Cannot insert the same book multiple times");
     
     return val;
   }
   
   /**
-   * Creates a string representation of the bookshelf
+   * Gets the comparator that orders this bookshelf, compiled from its sortList
+   * 
+   * @return this.comparator a Comparator<Book> that returns 0 only for the same book
+   */
+  public Comparator<Book> getComparator() {
+    return this.comparator;
+  }
+  
+  /**
+   * Compiles a valid sortList into a Comparator<Book>. AUTHOR is always first, so there is one
+   * straight-line comparator for each of the 6 orders of the other three Attributes. Each compares
+   * fields directly and computes every comparison at most once, with no per-call enum dispatch.
+   * 
+   * @param sortList a valid array of Attributes, starting with AUTHOR
+   * @return         a Comparator<Book> ordering books by sortList
+   */
+  static Comparator<Book> compileComparator(Attribute[] sortList) {
+    if(sortList[1] == Attribute.TITLE && sortList[2] == Attribute.PAGECOUNT) {
+      return (one, two) -> {
+        int val = one.compareAuthor(two);
+        if(val == 0) val = one.getTitle().compareTo(two.getTitle());
+        if(val == 0) val = Integer.compare(one.getPageCount(), two.getPageCount());
+        if(val == 0) val = Integer.compare(one.ID, two.ID);
+        return val;
+      };
+    } else if(sortList[1] == Attribute.TITLE) {
+      return (one, two) -> {
+        int val = one.compareAuthor(two);
+        if(val == 0) val = one.getTitle().compareTo(two.getTitle());
+        if(val == 0) val = Integer.compare(one.ID, two.ID);
+        if(val == 0) val = Integer.compare(one.getPageCount(), two.getPageCount());
+        return val;
+      };
+    } else if(sortList[1] == Attribute.PAGECOUNT && sortList[2] == Attribute.TITLE) {
+      return (one, two) -> {
+        int val = one.compareAuthor(two);
+        if(val == 0) val = Integer.compare(one.getPageCount(), two.getPageCount());
+        if(val == 0) val = one.getTitle().compareTo(two.getTitle());
+        if(val == 0) val = Integer.compare(one.ID, two.ID);
+        return val;
+      };
+    } else if(sortList[1] == Attribute.PAGECOUNT) {
+      return (one, two) -> {
+        int val = one.compareAuthor(two);
+        if(val == 0) val = Integer.compare(one.getPageCount(), two.getPageCount());
+        if(val == 0) val = Integer.compare(one.ID, two.ID);
+        if(val == 0) val = one.getTitle().compareTo(two.getTitle());
+        return val;
+      };
+    } else if(sortList[2] == Attribute.TITLE) {
+      return (one, two) -> {
+        int val = one.compareAuthor(two);
+        if(val == 0) val = Integer.compare(one.ID, two.ID);
+        if(val == 0) val = one.getTitle().compareTo(two.getTitle());
+        if(val == 0) val = Integer.compare(one.getPageCount(), two.getPageCount());
+        return val;
+      };
+    } else {
+      return (one, two) -> {
+        int val = one.compareAuthor(two);
+        if(val == 0) val = Integer.compare(one.ID, two.ID);
+        if(val == 0) val = Integer.compare(one.getPageCount(), two.getPageCount());
+        if(val == 0) val = one.getTitle().compareTo(two.getTitle());
+        return val;
+      };
+    }
+  }
+  
+  /**
+   * Packs the first four chars of an author into a long, so that comparing two packed authors as
+   * unsigned longs orders them like String.compareTo whenever they differ. Authors that pack the
+   * same may still differ after the fourth char, or when one is shorter and the other goes on with
+   * a char 0.
+   * 
+   * @param author String formatted like Book.getAuthor()
+   * @return       the packed prefix, padded with zero chars
+   */
+  static long authorPrefix(String author) {
+    long prefix = 0;
+    for(int i = 0; i < 4; ++i)
+      prefix = prefix << 16 | (i < author.length() ? author.charAt(i) : 0);
+    return prefix;
+  }
+  
+  /**
+   * Creates a string representation of the bookshelf, with each book on its own line in order
    * 
    * Complexity = O(N)
    * 
@@ -256,36 +1621,57 @@ public class BinaryBookshelf {
     if(isEmpty())
       return "";
     
-    return toStringHelper(root);
+    return toStringHelper(getRoot());
   }
   
   /**
-   * Helper method to build and return the String representation of the bookshelf
+   * Helper method to build and return the String representation of part of the bookshelf. Every
+   * book is appended once to a single StringBuilder, so this is linear in the length of the text.
    * 
-   * @param current TreeNode<Book> representing the current book
+   * @param current TreeNode<Book> representing the root of the part to represent
    * @return returnString a String representing the bookshelf
    */
   protected String toStringHelper(TreeNode<Book> current) {
-    String returnString = "";
-
-    // if the current node has no book, returns current returnString
-    if(current.getData() == null) 
-      return returnString;
+    StringBuilder returnString = new StringBuilder();
+    InOrderSpliterator<Book> books = new InOrderSpliterator<Book>(current, 0, comparator);
     
-    // left tree recursive searching
-    if(current.getLeft() != null) {
-      returnString = returnString + toStringHelper(current.getLeft());
-    } 
-    
-    // current node's data added to returnString
-    returnString = returnString + "\n" + current.getData();
-    
-    // right tree recursive searching
-    if(current.getRight() != null) {
-      returnString = returnString + toStringHelper(current.getRight());
-    } 
+    // each book is written on a new line
+    while(books.hasNext()) {
+      returnString.append('\n');
+      books.next().appendTo(returnString);
+    }
     
-    return returnString;
+    return returnString.toString();
+  }
+  
+  /**
+   * Writes the same text as toString() to out in one pass, without building it in memory first
+   * 
+   * Complexity = O(N)
+   * 
+   * @param out an Appendable, such as a Writer, to write the bookshelf to
+   * @throws    IOException if out can't be written to
+   */
+  public void writeTo(Appendable out) throws IOException {
+    for(Book book : this) {
+      out.append('\n');
+      book.appendTo(out);
+    }
+  }
+  
+  /**
+   * Writes the same text as toString() to a channel as UTF-8 in one pass, buffering only a few KB
+   * at a time. The channel is left open.
+   * 
+   * Complexity = O(N)
+   * 
+   * @param channel a WritableByteChannel to write the bookshelf to
+   * @throws        IOException if channel can't be written to
+   */
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    ChannelAppender out = new ChannelAppender(channel);
+    writeTo(out);
+    out.finish();
   }
   
   /**
@@ -294,7 +1680,7 @@ public class BinaryBookshelf {
    * @param sortList an array of Attributes that determines how the books will be ordered
    * @throws IllegalArgumentException if the sortList is invalid
    */
-  private void sortListValidity(Attribute[] sortList) {
+  static void sortListValidity(Attribute[] sortList) {
     // if the sortList does not have a length of 4, it is invalid
     if(sortList.length != 4)
       throw new IllegalArgumentException("sortList must have 4 elements");
@@ -332,5 +1718,253 @@ public class BinaryBookshelf {
       throw new IllegalArgumentException("Two or more elements are not unique");
     }
   }
+  
+  /**
+   * This class builds a height-optimal tree from a range of sorted books, forking the halves of a
+   * large range so they are built on separate threads
+   */
+  private static class BuildTask extends RecursiveTask<TreeNode<Book>> {
+    private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable
+    private Book[] sorted; // books sorted by sortList
+    private int from; // index of the first book in the range
+    private int to; // index just past the last book in the range
+    private Object owner; // owner token to give every new node
+    
+    /**
+     * Four arg constructor to create new BuildTask
+     * 
+     * @param sorted  an array of Book objects sorted by sortList
+     * @param from    the index of the first book in the range
+     * @param to      the index just past the last book in the range
+     * @param owner   Object the owner token to give every new node
+     */
+    private BuildTask(Book[] sorted, int from, int to, Object owner) {
+      this.sorted = sorted;
+      this.from = from;
+      this.to = to;
+      this.owner = owner;
+    }
+    
+    @Override
+    protected TreeNode<Book> compute() {
+      if(to - from < PARALLEL_THRESHOLD)
+        return buildRange(sorted, from, to, owner);
+      
+      int mid = (from + to) >>> 1;
+      BuildTask left = new BuildTask(sorted, from, mid, owner);
+      left.fork();
+      TreeNode<Book> right = new BuildTask(sorted, mid + 1, to, owner).compute();
+      TreeNode<Book> node = new TreeNode<Book>(sorted[mid], left.join(), right);
+      node.setOwner(owner);
+      return node;
+    }
+  }
+  
+  /**
+   * This class merges two sorted runs of books into their place in one output array. A large
+   * merge splits the longer run at its middle book, finds where that book would go in the other
+   * run, and merges the two halves on separate threads. A book in both runs always lands in the
+   * same half, and fills one slot with the kept book and the next with null.
+   */
+  private static class MergeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable
+    private Book[] first; // books from the first bookshelf, sorted
+    private int firstFrom; // index of the first book of the first run
+    private int firstTo; // index just past the first run
+    private Book[] second; // books from the second bookshelf, sorted
+    private int secondFrom; // index of the first book of the second run
+    private int secondTo; // index just past the second run
+    private Book[] out; // merged books go from out[firstFrom + secondFrom] on
+    private Comparator<Book> comparator; // the order both runs are sorted in
+    private DuplicatePolicy duplicates; // what to do with a book in both runs
+    
+    /**
+     * Nine arg constructor to create new MergeTask
+     * 
+     * @param first      an array of Book objects sorted by comparator
+     * @param firstFrom  the index of the first book of the first run
+     * @param firstTo    the index just past the first run
+     * @param second     an array of Book objects sorted by comparator
+     * @param secondFrom the index of the first book of the second run
+     * @param secondTo   the index just past the second run
+     * @param out        an array with a slot for every book of both arrays
+     * @param comparator Comparator<Book> both arrays are sorted by
+     * @param duplicates DuplicatePolicy for a book in both runs
+     */
+    private MergeTask(Book[] first, int firstFrom, int firstTo, Book[] second, int secondFrom, 
+        int secondTo, Book[] out, Comparator<Book> comparator, DuplicatePolicy duplicates) {
+      this.first = first;
+      this.firstFrom = firstFrom;
+      this.firstTo = firstTo;
+      this.second = second;
+      this.secondFrom = secondFrom;
+      this.secondTo = secondTo;
+      this.out = out;
+      this.comparator = comparator;
+      this.duplicates = duplicates;
+    }
+    
+    @Override
+    protected void compute() {
+      int firstLength = firstTo - firstFrom;
+      int secondLength = secondTo - secondFrom;
+      if(firstLength + secondLength < PARALLEL_THRESHOLD) {
+        merge();
+        return;
+      }
+      
+      // splits at the middle of the longer run and the first book not before it in the other
+      int firstMid;
+      int secondMid;
+      if(firstLength >= secondLength) {
+        firstMid = (firstFrom + firstTo) >>> 1;
+        secondMid = lowerBound(second, secondFrom, secondTo, first[firstMid]);
+      } else {
+        secondMid = (secondFrom + secondTo) >>> 1;
+        firstMid = lowerBound(first, firstFrom, firstTo, second[secondMid]);
+      }
+      
+      invokeAll(new MergeTask(first, firstFrom, firstMid, second, secondFrom, secondMid, out, 
+          comparator, duplicates), new MergeTask(first, firstMid, firstTo, second, secondMid, 
+          secondTo, out, comparator, duplicates));
+    }
+    
+    /**
+     * Merges the two runs on this thread
+     * 
+     * @throws IllegalArgumentException if a book is in both runs and duplicates is REJECT
+     */
+    private void merge() {
+      int i = firstFrom;
+      int j = secondFrom;
+      int k = firstFrom + secondFrom;
+      
+      while(i < firstTo && j < secondTo) {
+        int val = comparator.compare(first[i], second[j]);
+        if(val < 0) {
+          out[k++] = first[i++];
+        } else if(val > 0) {
+          out[k++] = second[j++];
+        } else {
+          if(duplicates == DuplicatePolicy.REJECT)
+            throw new IllegalArgumentException("Cannot insert the same book multiple times");
+          out[k++] = duplicates == DuplicatePolicy.KEEP_FIRST ? first[i] : second[j];
+          out[k++] = null;
+          i++;
+          j++;
+        }
+      }
+      
+      while(i < firstTo)
+        out[k++] = first[i++];
+      while(j < secondTo)
+        out[k++] = second[j++];
+    }
+    
+    /**
+     * Finds the first book in a run that doesn't sort before a book
+     * 
+     * @param run  an array of Book objects sorted by comparator
+     * @param from the index of the first book of the run
+     * @param to   the index just past the run
+     * @param book Book to look for
+     * @return     the index of the first book not before book, to if there is none
+     */
+    private int lowerBound(Book[] run, int from, int to, Book book) {
+      while(from < to) {
+        int mid = (from + to) >>> 1;
+        if(comparator.compare(run[mid], book) < 0)
+          from = mid + 1;
+        else
+          to = mid;
+      }
+      return from;
+    }
+  }
+  
+  /**
+   * This class tests every book of a subtree. A large subtree forks a task for each of its
+   * children and tests its own book, and a small one walks itself in order on one thread. Each
+   * task keeps its matches until drainTo copies them all into one list in order. On a balanced
+   * tree a subtree counts as small once its height caps it below PARALLEL_THRESHOLD books, so
+   * lopsided children still split as far as they need to; on a plain BST only the halved size
+   * estimate is known.
+   */
+  private static class ScanTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable
+    private TreeNode<Book> subtree; // root of the subtree to test, may be null
+    private long estimate; // estimated number of books in the subtree
+    private boolean balanced; // true if node heights are kept, so they bound each subtree's size
+    private Predicate<? super Book> filter; // true for the books to keep
+    private ScanTask left; // task for the left subtree, null if this one walked it
+    private ScanTask right; // task for the right subtree, null if this one walked it
+    private boolean matched; // true if the subtree's own root passed, once it has been split
+    private ArrayList<Book> matches; // books that passed, in order, if this one walked the subtree
+    private int count; // number of books in the whole subtree that passed
+    
+    /**
+     * Four arg constructor to create new ScanTask
+     * 
+     * @param subtree  TreeNode<Book> the root of the subtree to test, may be null
+     * @param estimate long the estimated number of books in the subtree
+     * @param balanced boolean true if the tree keeps the height of every node
+     * @param filter   Predicate<? super Book> that is true for the books to keep
+     */
+    private ScanTask(TreeNode<Book> subtree, long estimate, boolean balanced, 
+        Predicate<? super Book> filter) {
+      this.subtree = subtree;
+      this.estimate = estimate;
+      this.balanced = balanced;
+      this.filter = filter;
+    }
+    
+    @Override
+    protected void compute() {
+      if(subtree == null)
+        return;
+      
+      // a subtree of height h holds at most 2^h - 1 books, so a balanced one splits until that
+      // bound is small whatever the estimate says. A plain BST splits only while each half of the
+      // estimate is still worth a thread, which also bounds the recursion on one long path.
+      boolean large = balanced ? (1L << subtree.getHeight()) > PARALLEL_THRESHOLD 
+          : estimate >= PARALLEL_THRESHOLD;
+      if(large) {
+        long rest = Math.max(estimate - 1, 0);
+        long half = rest >>> 1;
+        left = new ScanTask(subtree.getLeft(), half, balanced, filter);
+        right = new ScanTask(subtree.getRight(), rest - half, balanced, filter);
+        left.fork();
+        matched = filter.test(subtree.getData());
+        right.compute();
+        left.join();
+        count = left.count + (matched ? 1 : 0) + right.count;
+        return;
+      }
+      
+      matches = new ArrayList<Book>();
+      InOrderSpliterator<Book> books = new InOrderSpliterator<Book>(subtree, estimate, null);
+      while(books.hasNext()) {
+        Book book = books.next();
+        if(filter.test(book))
+          matches.add(book);
+      }
+      count = matches.size();
+    }
+    
+    /**
+     * Adds every book of the subtree that passed to a list, in order
+     * 
+     * @param out ArrayList<Book> to add the books to
+     */
+    private void drainTo(ArrayList<Book> out) {
+      if(matches != null) {
+        out.addAll(matches);
+      } else if(left != null) {
+        left.drainTo(out);
+        if(matched)
+          out.add(subtree.getData());
+        right.drainTo(out);
+      }
+    }
+  }
 }
-
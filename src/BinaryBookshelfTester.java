@@ -1,5 +1,30 @@
 // imports
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This class tests BinaryBookshelf.java and TreeNode.java to ensure they works properly
@@ -15,6 +40,31 @@ public class BinaryBookshelfTester {
     System.out.println(testInsertBook());
     System.out.println(testContains());
     System.out.println(testGetBooksByAuthor());
+    System.out.println(testBalancedInsert());
+    System.out.println(testDeepInsertAndContains());
+    System.out.println(testGetBooksByAuthorRange());
+    System.out.println(testCompareAuthor());
+    System.out.println(testGetComparator());
+    System.out.println(testInsertBooks());
+    System.out.println(testIterator());
+    System.out.println(testWriteTo());
+    System.out.println(testConcurrentBookshelf());
+    System.out.println(testBookIdAllocator());
+    System.out.println(testSnapshot());
+    System.out.println(testMappedBookshelf());
+    System.out.println(testJournaledBookshelf());
+    System.out.println(testOffHeapBookshelf());
+    System.out.println(testArrayBinaryBookshelf());
+    System.out.println(testBTreeBookshelf());
+    System.out.println(testSecondaryIndexes());
+    System.out.println(testGetById());
+    System.out.println(testRemoveBook());
+    System.out.println(testContainsBooks());
+    System.out.println(testUnion());
+    System.out.println(testSortedBy());
+    System.out.println(testFilter());
+    System.out.println(testQuerySinks());
+    System.out.println(testPagination());
   }
   
   /**
@@ -671,4 +721,2361 @@ public class BinaryBookshelfTester {
     
     return true;
   }
+  
+  /**
+   * Tests insertBook on a balanced BinaryBookshelf to ensure sorted input stays O(logN) tall
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testBalancedInsert() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a balanced BinaryBookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // ensures the bookshelf reports that it is balanced
+    if(!bookshelf.isBalanced() || new BinaryBookshelf(a).isBalanced()) {
+      System.out.println("ERROR: ONLY bookshelf SHOULD BE BALANCED");
+      return false;
+    }
+    
+    // inserts 20000 books already sorted by author, which would be a linked list in a plain BST
+    Book[] books = new Book[20000];
+    try {
+      for(int i = 0; i < books.length; ++i) {
+        books[i] = new Book("Title", 100, "Author" + (100000 + i), "First");
+        bookshelf.insertBook(books[i]);
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // ensures every book was added
+    if(bookshelf.size() != books.length) {
+      System.out.println("ERROR: SIZE SHOULD BE " + books.length);
+      System.out.println("size = " + bookshelf.size());
+      return false;
+    }
+    
+    // an AVL tree of 20000 nodes is never taller than 1.44 * log2(20000), about 21
+    if(bookshelf.getRoot().getHeight() > 21) {
+      System.out.println("ERROR: bookshelf SHOULD BE AT MOST 21 TALL");
+      System.out.println("height = " + bookshelf.getRoot().getHeight());
+      return false;
+    }
+    
+    // ensures every book can still be found
+    for(int i = 0; i < books.length; ++i) {
+      if(!bookshelf.contains(books[i])) {
+        System.out.println("ERROR: bookshelf SHOULD CONTAIN books[" + i + "]");
+        return false;
+      }
+    }
+    
+    // should throw exception since books[0] is already in the bookshelf
+    try {
+      bookshelf.insertBook(books[0]);
+      System.out.println("ERROR: THE SAME BOOKS SHOULD NOT BE ABLE TO BE ADDED TWICE");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // ensures a rejected book doesn't change the size
+    if(bookshelf.size() != books.length) {
+      System.out.println("ERROR: SIZE SHOULD STILL BE " + books.length);
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests that insertBook and contains work on a plain BinaryBookshelf that is too deep to recurse
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testDeepInsertAndContains() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.TITLE, Attribute.ID};
+    // creates an unbalanced BinaryBookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a);
+    
+    // inserts 12000 books in sorted order, making the bookshelf a 12000 node long chain
+    Book[] books = new Book[12000];
+    try {
+      for(int i = 0; i < books.length; ++i) {
+        books[i] = new Book("Title", 1 + i, "Author", "Same");
+        bookshelf.insertBook(books[i]);
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // ensures every book was added
+    if(bookshelf.size() != books.length) {
+      System.out.println("ERROR: SIZE SHOULD BE " + books.length);
+      System.out.println("size = " + bookshelf.size());
+      return false;
+    }
+    
+    try {
+      // ensures the deepest book can be found
+      if(!bookshelf.contains(books[books.length - 1])) {
+        System.out.println("ERROR: bookshelf SHOULD CONTAIN THE DEEPEST BOOK");
+        return false;
+      }
+      
+      // ensures a book past the deepest one is not found
+      if(bookshelf.contains(new Book("Title", books.length + 1, "Author", "Same"))) {
+        System.out.println("ERROR: bookshelf SHOULD NOT CONTAIN A BOOK THAT WAS NOT ADDED");
+        return false;
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // should throw exception since the deepest book is already in the bookshelf
+    try {
+      bookshelf.insertBook(books[books.length - 1]);
+      System.out.println("ERROR: THE SAME BOOKS SHOULD NOT BE ABLE TO BE ADDED TWICE");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests getBooksByAuthor on a larger balanced bookshelf to ensure it returns exactly one author's
+   * contiguous run of books, in shelf order
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testGetBooksByAuthorRange() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.TITLE, Attribute.ID};
+    // creates a balanced BinaryBookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // inserts 50 books for each of 3 authors, interleaved and with page counts out of order
+    String[] lastnames = {"Banno", "Liu", "Stephenson"};
+    for(int i = 0; i < 50; ++i) {
+      for(int j = 0; j < lastnames.length; ++j) {
+        bookshelf.insertBook(new Book("Book " + i, 1 + (i * 37) % 50, lastnames[j], "Eri"));
+      }
+    }
+    
+    // creates an ArrayList with all books by Eri Liu
+    ArrayList<Book> liuBooks = bookshelf.getBooksByAuthor("Liu, Eri");
+    
+    // ensures there are 50 books, all by Eri Liu, in increasing page count order
+    if(liuBooks.size() != 50) {
+      System.out.println("ERROR: liuBooks ArrayList SHOULD CONTAIN 50 BOOKS");
+      System.out.println("size = " + liuBooks.size());
+      return false;
+    }
+    for(int i = 0; i < liuBooks.size(); ++i) {
+      if(!liuBooks.get(i).getAuthor().equals("Liu, Eri") || liuBooks.get(i).getPageCount() != i + 1) {
+        System.out.println("ERROR: liuBooks SHOULD HOLD ERI LIU'S BOOKS IN PAGE COUNT ORDER");
+        return false;
+      }
+    }
+    
+    // ensures authors sorting before, between, and after the others have no books
+    String[] missing = {"Aardvark, Eri", "Liu, Eri A", "Zelazny, Roger"};
+    for(int i = 0; i < missing.length; ++i) {
+      if(!bookshelf.getBooksByAuthor(missing[i]).isEmpty()) {
+        System.out.println("ERROR: THERE SHOULD BE NO BOOKS BY " + missing[i]);
+        return false;
+      }
+    }
+    
+    // ensures the first and last authors are found whole
+    if(bookshelf.getBooksByAuthor("Banno, Eri").size() != 50 
+        || bookshelf.getBooksByAuthor("Stephenson, Eri").size() != 50) {
+      System.out.println("ERROR: BANNO AND STEPHENSON SHOULD EACH HAVE 50 BOOKS");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests the cached author key comparisons in Book.java to ensure they order books exactly like
+   * comparing the "Lastname, Firstname" Strings
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testCompareAuthor() {
+    // pairs of names, including last names that are prefixes of each other and contain spaces
+    String[][] names = {{"Le Guin", "Ursula"}, {"Le", "Ursula"}, {"Liu", "Marie"}, {"Li", "Marie"},
+        {"Liu", "Mari"}, {"Liu", ""}, {"", "Marie"}, {"Gaiman", "Neil"}, {"Le,", "A"}};
+    
+    try {
+      for(int i = 0; i < names.length; ++i) {
+        Book book = new Book("Title", 100, names[i][0], names[i][1]);
+        
+        for(int j = 0; j < names.length; ++j) {
+          Book other = new Book("Title", 100, names[j][0], names[j][1]);
+          int expected = Integer.signum(book.getAuthor().compareTo(other.getAuthor()));
+          
+          // ensures both comparisons agree in sign with the String comparison
+          if(Integer.signum(book.compareAuthor(other)) != expected 
+              || Integer.signum(book.compareAuthorTo(names[j][0], names[j][1])) != expected) {
+            System.out.println("ERROR: COMPARING " + book.getAuthor() + " TO " + other.getAuthor()
+                + " SHOULD GIVE " + expected);
+            return false;
+          }
+        }
+      }
+      
+      // ensures the cached author key is still formatted as "Lastname, Firstname"
+      if(!new Book("Good Omens", 288, "Gaiman", "Neil").getAuthor().equals("Gaiman, Neil")) {
+        System.out.println("ERROR: getAuthor() SHOULD RETURN \"Gaiman, Neil\"");
+        return false;
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests getComparator in BinaryBookshelf.java to ensure the compiled comparator orders books the
+   * same way as comparing them by each Attribute of every valid sortList in turn
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testGetComparator() {
+    // every valid sortList, one for each order of the last three Attributes
+    Attribute[][] sortLists = {
+        {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID},
+        {Attribute.AUTHOR, Attribute.TITLE, Attribute.ID, Attribute.PAGECOUNT},
+        {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.TITLE, Attribute.ID},
+        {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.ID, Attribute.TITLE},
+        {Attribute.AUTHOR, Attribute.ID, Attribute.TITLE, Attribute.PAGECOUNT},
+        {Attribute.AUTHOR, Attribute.ID, Attribute.PAGECOUNT, Attribute.TITLE}};
+    
+    // books that tie on different Attributes, where later IDs have fewer pages and earlier titles
+    Book[] books = {new Book("B", 300, "Liu", "Marie"), new Book("A", 200, "Liu", "Marie"),
+        new Book("B", 200, "Liu", "Marie"), new Book("A", 300, "Gaiman", "Neil"),
+        new Book("A", 100, "Liu", "Marie")};
+    
+    try {
+      for(int i = 0; i < sortLists.length; ++i) {
+        BinaryBookshelf bookshelf = new BinaryBookshelf(sortLists[i]);
+        
+        for(int j = 0; j < books.length; ++j) {
+          for(int k = 0; k < books.length; ++k) {
+            // compares the books one Attribute at a time
+            int expected = 0;
+            for(int l = 0; l < 4 && expected == 0; ++l)
+              expected = Integer.signum(books[j].compareTo(books[k], sortLists[i][l]));
+            
+            // ensures the compiled comparator agrees in sign
+            if(Integer.signum(bookshelf.getComparator().compare(books[j], books[k])) != expected) {
+              System.out.println("ERROR: " + bookshelf.getAttributeOrder() + " COMPARES " 
+                  + books[j] + " TO " + books[k] + " WRONG");
+              return false;
+            }
+          }
+        }
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests insertBooks in BinaryBookshelf.java to ensure a batch is loaded into a height-optimal
+   * bookshelf and that batches with duplicates are rejected without changing the bookshelf
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testInsertBooks() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a plain BinaryBookshelf, which bulk loading still fills balanced
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a);
+    
+    // creates 1000 books in a scrambled order
+    ArrayList<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 1000; ++i)
+      books.add(new Book("Title " + (i * 7919) % 1000, 100, "Author" + (i * 31) % 10, "First"));
+    
+    try {
+      bookshelf.insertBooks(books);
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // ensures every book was added into a tree of optimal height, ceil(log2(1001)) = 10
+    if(bookshelf.size() != 1000 || bookshelf.getRoot().getHeight() != 10) {
+      System.out.println("ERROR: bookshelf SHOULD HOLD 1000 BOOKS AND BE 10 TALL");
+      return false;
+    }
+    for(int i = 0; i < books.size(); ++i) {
+      if(!bookshelf.contains(books.get(i))) {
+        System.out.println("ERROR: bookshelf SHOULD CONTAIN BOOK " + books.get(i));
+        return false;
+      }
+    }
+    
+    // should throw exception since the batch holds the same new book twice
+    Book book0 = new Book("Good Omens", 288, "Gaiman", "Neil");
+    try {
+      bookshelf.insertBooks(new Book[] {book0, new Book("FEED", 608, "Grant", "Mira"), book0});
+      System.out.println("ERROR: A BATCH WITH THE SAME BOOK TWICE SHOULD THROW AN EXCEPTION");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // should throw exception since the last book of a large batch is already in the bookshelf
+    ArrayList<Book> overlapping = new ArrayList<Book>();
+    for(int i = 0; i < 500; ++i)
+      overlapping.add(new Book("Other " + i, 100, "Author" + i % 10, "First"));
+    overlapping.add(books.get(999));
+    try {
+      bookshelf.insertBooks(overlapping);
+      System.out.println("ERROR: A BATCH WITH A SHELVED BOOK SHOULD THROW AN EXCEPTION");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // ensures the rejected batches left the bookshelf unchanged
+    if(bookshelf.size() != 1000 || bookshelf.contains(book0) || bookshelf.contains(overlapping.get(0))) {
+      System.out.println("ERROR: REJECTED BATCHES SHOULD NOT CHANGE bookshelf");
+      return false;
+    }
+    
+    // adds a large batch, merging it with the books already there, then a small one
+    try {
+      overlapping.remove(500);
+      bookshelf.insertBooks(overlapping);
+      bookshelf.insertBooks(new Book[] {book0});
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // ensures every book is there and in order
+    if(bookshelf.size() != 1501 || !bookshelf.contains(book0) || !bookshelf.contains(overlapping.get(0))) {
+      System.out.println("ERROR: bookshelf SHOULD HOLD ALL 1501 BOOKS");
+      return false;
+    }
+    if(bookshelf.getBooksByAuthor("Author3, First").size() != 150) {
+      System.out.println("ERROR: bookshelf SHOULD HOLD 150 BOOKS BY Author3");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests iterator, spliterator and stream in BinaryBookshelf.java to ensure they visit every book
+   * exactly once and in order, including when the stream is split across threads
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testIterator() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.TITLE, Attribute.ID};
+    // creates a balanced BinaryBookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // ensures an empty bookshelf has nothing to iterate
+    if(bookshelf.iterator().hasNext() || bookshelf.stream().count() != 0) {
+      System.out.println("ERROR: AN EMPTY bookshelf SHOULD HAVE NOTHING TO ITERATE");
+      return false;
+    }
+    
+    // inserts 10000 books in a scrambled order
+    for(int i = 0; i < 10000; ++i)
+      bookshelf.insertBook(new Book("Title", 1 + (i * 7919) % 10000, "Author", "Same"));
+    
+    try {
+      // ensures the iterator returns every page count from 1 to 10000 in order
+      Iterator<Book> iterator = bookshelf.iterator();
+      for(int i = 1; i <= 10000; ++i) {
+        if(!iterator.hasNext() || iterator.next().getPageCount() != i) {
+          System.out.println("ERROR: THE ITERATOR SHOULD RETURN BOOK WITH " + i + " PAGES NEXT");
+          return false;
+        }
+      }
+      if(iterator.hasNext()) {
+        System.out.println("ERROR: THE ITERATOR SHOULD BE FINISHED");
+        return false;
+      }
+      
+      // ensures a parallel stream sees every book once and keeps them in order when collected
+      List<Book> collected = bookshelf.stream().parallel().collect(Collectors.toList());
+      long pages = bookshelf.stream().parallel().mapToLong(Book::getPageCount).sum();
+      if(collected.size() != 10000 || pages != 10000L * 10001 / 2) {
+        System.out.println("ERROR: THE PARALLEL STREAM SHOULD SEE ALL 10000 BOOKS ONCE");
+        return false;
+      }
+      for(int i = 0; i < collected.size(); ++i) {
+        if(collected.get(i).getPageCount() != i + 1) {
+          System.out.println("ERROR: THE PARALLEL STREAM SHOULD KEEP THE BOOKS IN ORDER");
+          return false;
+        }
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests toString and writeTo in BinaryBookshelf.java to ensure every way of writing the bookshelf
+   * produces the same text, one book per line in order
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testWriteTo() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a BinaryBookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a);
+    
+    // inserts two books out of order
+    bookshelf.insertBook(new Book("Good Omens", 288, "Gaiman", "Neil"));
+    bookshelf.insertBook(new Book("2001", 296, "Clarke", "Arthur C"));
+    
+    // ensures toString() lists the books in order, each on a new line
+    String expected = "\n1: \"2001\", Clarke, Arthur C (296)\n0: \"Good Omens\", Gaiman, Neil (288)";
+    if(!bookshelf.toString().equals(expected)) {
+      System.out.println("ERROR: bookshelf.toString() SHOULD BE " + expected);
+      System.out.println("bookshelf.toString() = " + bookshelf.toString());
+      return false;
+    }
+    
+    // inserts enough books with non-ASCII titles to take several buffers to write
+    for(int i = 0; i < 2000; ++i)
+      bookshelf.insertBook(new Book("Caf\u00e9 \u4e66 " + i, 100, "Author", "" + i));
+    
+    try {
+      // writes the bookshelf to a Writer and to a channel
+      StringWriter writer = new StringWriter();
+      bookshelf.writeTo(writer);
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      bookshelf.writeTo(Channels.newChannel(stream));
+      
+      // ensures both match toString() exactly
+      if(!writer.toString().equals(bookshelf.toString())) {
+        System.out.println("ERROR: writeTo(Appendable) SHOULD MATCH toString()");
+        return false;
+      }
+      if(!new String(stream.toByteArray(), StandardCharsets.UTF_8).equals(bookshelf.toString())) {
+        System.out.println("ERROR: writeTo(WritableByteChannel) SHOULD MATCH toString()");
+        return false;
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests ConcurrentBinaryBookshelf.java to ensure readers always see a complete, ordered bookshelf
+   * while several writers insert at the same time, and that no insert is lost
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testConcurrentBookshelf() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a ConcurrentBinaryBookshelf
+    ConcurrentBinaryBookshelf bookshelf = new ConcurrentBinaryBookshelf(a);
+    
+    // shelves 100 books before any thread starts
+    Book[] early = new Book[100];
+    for(int i = 0; i < early.length; ++i) {
+      early[i] = new Book("Early " + i, 100, "Author" + i % 7, "First");
+      bookshelf.insertBook(early[i]);
+    }
+    
+    // creates 2000 books for each of 4 writers ahead of time
+    Book[][] batches = new Book[4][2000];
+    for(int i = 0; i < batches.length; ++i) {
+      for(int j = 0; j < batches[i].length; ++j)
+        batches[i][j] = new Book("Writer " + i, 1 + j, "Author" + j % 7, "First");
+    }
+    
+    AtomicBoolean failed = new AtomicBoolean(false);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    
+    // writers insert their own books one at a time
+    for(int i = 0; i < batches.length; ++i) {
+      Book[] batch = batches[i];
+      threads.add(new Thread(() -> {
+        for(int j = 0; j < batch.length; ++j)
+          bookshelf.insertBook(batch[j]);
+      }));
+    }
+    
+    // readers check the early books and that every tree they walk is complete and ordered
+    for(int i = 0; i < 4; ++i) {
+      threads.add(new Thread(() -> {
+        try {
+          while(writing.get() && !failed.get()) {
+            for(int j = 0; j < early.length; ++j) {
+              if(!bookshelf.contains(early[j]))
+                failed.set(true);
+            }
+            
+            Object[] books = bookshelf.stream().toArray();
+            for(int j = 1; j < books.length; ++j) {
+              if(bookshelf.getComparator().compare((Book) books[j - 1], (Book) books[j]) >= 0)
+                failed.set(true);
+            }
+            
+            if(bookshelf.getBooksByAuthor("Author3, First").size() < 14)
+              failed.set(true);
+          }
+        } catch(Exception e) {
+          failed.set(true);
+        }
+      }));
+    }
+    
+    try {
+      for(Thread thread : threads)
+        thread.start();
+      for(int i = 0; i < batches.length; ++i)
+        threads.get(i).join();
+      writing.set(false);
+      for(Thread thread : threads)
+        thread.join();
+    } catch(InterruptedException e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // ensures no reader saw a broken bookshelf
+    if(failed.get()) {
+      System.out.println("ERROR: A READER SAW AN INCOMPLETE OR UNORDERED bookshelf");
+      return false;
+    }
+    
+    // ensures every insert made it in and the bookshelf stayed balanced
+    if(bookshelf.size() != 8100 || bookshelf.stream().count() != 8100) {
+      System.out.println("ERROR: bookshelf SHOULD HOLD 8100 BOOKS");
+      System.out.println("size = " + bookshelf.size());
+      return false;
+    }
+    if(bookshelf.getRoot().getHeight() > 19) {
+      System.out.println("ERROR: bookshelf SHOULD BE AT MOST 19 TALL");
+      return false;
+    }
+    for(int i = 0; i < batches.length; ++i) {
+      for(int j = 0; j < batches[i].length; ++j) {
+        if(!bookshelf.contains(batches[i][j])) {
+          System.out.println("ERROR: bookshelf SHOULD CONTAIN " + batches[i][j]);
+          return false;
+        }
+      }
+    }
+    
+    // inserts and removes batches of 3, small enough next to the shelf to go one book at a time
+    // inside, while a reader ensures it only ever sees whole batches
+    AtomicBoolean batching = new AtomicBoolean(true);
+    Thread reader = new Thread(() -> {
+      while(batching.get() && !failed.get()) {
+        if((bookshelf.size() - 8100) % 3 != 0)
+          failed.set(true);
+      }
+    });
+    reader.start();
+    for(int i = 0; i < 2000; ++i) {
+      List<Book> small = Arrays.asList(new Book("Small " + i, 1, "Author", "A"), 
+          new Book("Small " + i, 2, "Author", "B"), new Book("Small " + i, 3, "Author", "C"));
+      bookshelf.insertBooks(small);
+      if(i % 2 == 0)
+        bookshelf.removeBooks(small);
+    }
+    batching.set(false);
+    try {
+      reader.join();
+    } catch(InterruptedException e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    if(failed.get() || bookshelf.size() != 8100 + 3000) {
+      System.out.println("ERROR: A READER SAW PART OF A SMALL BATCH");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests BookIdAllocator.java to ensure Books created on many threads at once never share an ID,
+   * and that separate allocators number their Books independently
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testBookIdAllocator() {
+    // one allocator shared by 8 threads, each creating 10000 books
+    BookIdAllocator shared = new BookIdAllocator();
+    Book[][] books = new Book[8][10000];
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for(int i = 0; i < books.length; ++i) {
+      Book[] created = books[i];
+      threads.add(new Thread(() -> {
+        for(int j = 0; j < created.length; ++j)
+          created[j] = new Book("Title", 100, "Author", "First", shared);
+      }));
+    }
+    
+    try {
+      for(Thread thread : threads)
+        thread.start();
+      for(Thread thread : threads)
+        thread.join();
+    } catch(InterruptedException e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    }
+    
+    // ensures all 80000 IDs are different and each thread's IDs increase
+    HashSet<Integer> ids = new HashSet<Integer>();
+    for(int i = 0; i < books.length; ++i) {
+      for(int j = 0; j < books[i].length; ++j) {
+        if(!ids.add(books[i][j].ID)) {
+          System.out.println("ERROR: ID " + books[i][j].ID + " WAS HANDED OUT TWICE");
+          return false;
+        }
+        if(j > 0 && books[i][j].ID <= books[i][j - 1].ID) {
+          System.out.println("ERROR: IDS FROM ONE THREAD SHOULD INCREASE");
+          return false;
+        }
+      }
+    }
+    
+    // ensures a separate allocator starts from 0 without touching the default one
+    Book.resetGenerator();
+    BookIdAllocator tenant = new BookIdAllocator();
+    Book book0 = new Book("Good Omens", 288, "Gaiman", "Neil");
+    Book book1 = new Book("FEED", 608, "Grant", "Mira", tenant);
+    Book book2 = new Book("Snow Crash", 468, tenant);
+    Book book3 = new Book("2001", 296, "Clarke", "Arthur C");
+    if(book0.ID != 0 || book1.ID != 0 || book2.ID != 1 || book3.ID != 1) {
+      System.out.println("ERROR: EACH ALLOCATOR SHOULD NUMBER ITS BOOKS FROM 0");
+      return false;
+    }
+    
+    // ensures resetting an allocator starts it from 0 again
+    tenant.reset();
+    if(new Book("Genki", 382, "Banno", "Eri", tenant).ID != 0) {
+      System.out.println("ERROR: A RESET ALLOCATOR SHOULD START FROM 0");
+      return false;
+    }
+    
+    // ensures reserving IDs skips past them even inside a block already claimed, and never goes
+    // back to lower ones
+    tenant.reserveThrough(5000);
+    tenant.reserveThrough(10);
+    if(new Book("Genki", 382, "Banno", "Eri", tenant).ID != 5001) {
+      System.out.println("ERROR: AN ALLOCATOR SHOULD HAND OUT NO ID UP TO A RESERVED ONE");
+      return false;
+    }
+    tenant.reset();
+    if(new Book("Genki", 382, "Banno", "Eri", tenant).ID != 0) {
+      System.out.println("ERROR: RESETTING SHOULD DROP RESERVED IDS");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests snapshot in BinaryBookshelf.java to ensure a snapshot never changes, can't be changed,
+   * and shares all but one root-to-leaf path of nodes with the bookshelf after an insert
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testSnapshot() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    
+    // checks both a plain and a balanced bookshelf
+    for(int k = 0; k < 2; ++k) {
+      BinaryBookshelf bookshelf = new BinaryBookshelf(a, k == 1);
+      
+      // inserts 500 books in a scrambled order and takes a snapshot
+      for(int i = 0; i < 500; ++i)
+        bookshelf.insertBook(new Book("Title " + (i * 7919) % 1000, 100, "Author", "First"));
+      BinaryBookshelf snapshot = bookshelf.snapshot();
+      String before = snapshot.toString();
+      
+      // inserts one more book and makes sure only its path was copied
+      Book book0 = new Book("Good Omens", 288, "Gaiman", "Neil");
+      bookshelf.insertBook(book0);
+      Set<TreeNode<Book>> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+      collectNodes(snapshot.getRoot(), shared);
+      Set<TreeNode<Book>> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+      collectNodes(bookshelf.getRoot(), copied);
+      copied.removeAll(shared);
+      // the path is every node the book passed in the snapshot, plus its own new node
+      int depth = 1;
+      for(TreeNode<Book> node = snapshot.getRoot(); node != null; ++depth) {
+        node = bookshelf.getComparator().compare(book0, node.getData()) < 0 ? node.getLeft() 
+            : node.getRight();
+      }
+      if(copied.size() > depth) {
+        System.out.println("ERROR: ONE INSERT SHOULD ONLY COPY ITS PATH OF " + depth + " NODES");
+        System.out.println("copied = " + copied.size());
+        return false;
+      }
+      
+      // inserts 500 more books into the bookshelf
+      for(int i = 0; i < 500; ++i)
+        bookshelf.insertBook(new Book("Title " + (i * 7919) % 1000, 100, "Later", "First"));
+      
+      // ensures the snapshot still holds exactly the first 500 books
+      if(snapshot.size() != 500 || !snapshot.toString().equals(before) || snapshot.contains(book0)) {
+        System.out.println("ERROR: THE SNAPSHOT SHOULD NOT CHANGE");
+        return false;
+      }
+      
+      // ensures the bookshelf holds all 1001 books
+      if(bookshelf.size() != 1001 || bookshelf.stream().count() != 1001 || !bookshelf.contains(book0)) {
+        System.out.println("ERROR: bookshelf SHOULD HOLD 1001 BOOKS");
+        return false;
+      }
+      
+      // should throw exception since the snapshot is read-only
+      try {
+        snapshot.insertBook(new Book("FEED", 608, "Grant", "Mira"));
+        System.out.println("ERROR: A SNAPSHOT SHOULD NOT BE ABLE TO BE CHANGED");
+        return false;
+      } catch(UnsupportedOperationException uoe) {
+        // expected
+      }
+      
+      // ensures a snapshot reports it is read-only and the bookshelf doesn't
+      if(!snapshot.isReadOnly() || bookshelf.isReadOnly()) {
+        System.out.println("ERROR: ONLY THE SNAPSHOT SHOULD BE READ-ONLY");
+        return false;
+      }
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Adds every node of a tree to a set
+   * 
+   * @param current TreeNode<Book> the root of the tree, may be null
+   * @param nodes   Set<TreeNode<Book>> to add the nodes to
+   */
+  private static void collectNodes(TreeNode<Book> current, Set<TreeNode<Book>> nodes) {
+    if(current == null)
+      return;
+    
+    nodes.add(current);
+    collectNodes(current.getLeft(), nodes);
+    collectNodes(current.getRight(), nodes);
+  }
+  
+  /**
+   * Tests MappedBookshelf.java to ensure a saved bookshelf answers contains, getBooksByAuthor and
+   * iteration exactly like the bookshelf it was saved from
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testMappedBookshelf() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.TITLE, Attribute.ID};
+    // creates a balanced BinaryBookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // inserts 1000 books by 10 authors, some with non-ASCII names
+    for(int i = 0; i < 1000; ++i)
+      bookshelf.insertBook(new Book("Title " + i, 1 + (i * 7919) % 500, "Au\u00df" + i % 10, "B"));
+    Book book0 = new Book("Good Omens", 288, "Gaiman", "Neil");
+    bookshelf.insertBook(book0);
+    
+    Path file = null;
+    try {
+      // saves the bookshelf and maps it back
+      file = Files.createTempFile("bookshelf", ".bin");
+      MappedBookshelf.write(bookshelf, file);
+      MappedBookshelf mapped = MappedBookshelf.open(file);
+      
+      // ensures the sizes match and every book is found, but not a book that was never added
+      if(mapped.size() != bookshelf.size()) {
+        System.out.println("ERROR: mapped SHOULD HOLD " + bookshelf.size() + " BOOKS");
+        return false;
+      }
+      for(Book book : bookshelf) {
+        if(!mapped.contains(book)) {
+          System.out.println("ERROR: mapped SHOULD CONTAIN " + book);
+          return false;
+        }
+      }
+      if(mapped.contains(new Book("Good Omens", 288, "Gaiman", "Neil"))) {
+        System.out.println("ERROR: mapped SHOULD NOT CONTAIN A BOOK THAT WAS NOT ADDED");
+        return false;
+      }
+      
+      // ensures author lookups match, including an author with no books
+      String[] authors = {"Au\u00df3, B", "Gaiman, Neil", "Au\u00df, B"};
+      for(int i = 0; i < authors.length; ++i) {
+        if(!mapped.getBooksByAuthor(authors[i]).toString()
+            .equals(bookshelf.getBooksByAuthor(authors[i]).toString())) {
+          System.out.println("ERROR: mapped SHOULD FIND THE SAME BOOKS BY " + authors[i]);
+          return false;
+        }
+      }
+      
+      // ensures iterating and rebuilding the bookshelf give back the same books in order
+      StringBuilder listing = new StringBuilder();
+      for(Book book : mapped)
+        listing.append('\n').append(book);
+      BinaryBookshelf restored = mapped.toBookshelf(true);
+      if(!listing.toString().equals(bookshelf.toString()) 
+          || !restored.toString().equals(bookshelf.toString()) || !restored.contains(book0)) {
+        System.out.println("ERROR: mapped SHOULD LIST THE SAME BOOKS AS bookshelf");
+        return false;
+      }
+      
+      // ensures a book created after restoring, as if after a restart, gets an ID none of the
+      // restored books has
+      Book.resetGenerator();
+      restored = mapped.toBookshelf(true);
+      Book added = new Book("Coraline", 162, "Gaiman", "Neil");
+      if(restored.getById(added.ID) != null) {
+        System.out.println("ERROR: A NEW BOOK SHOULD NOT REUSE THE ID OF A RESTORED ONE");
+        return false;
+      }
+      
+      // ensures the same for a bookshelf whose books are numbered by their own allocator
+      BookIdAllocator ids = new BookIdAllocator();
+      restored = mapped.toBookshelf(true, ids);
+      if(restored.getById(new Book("Coraline", 162, "Gaiman", "Neil", ids).ID) != null) {
+        System.out.println("ERROR: A NEW BOOK SHOULD NOT REUSE THE ID OF A RESTORED ONE");
+        return false;
+      }
+      
+      // ensures saving over the file replaces it whole and leaves no temporary file behind
+      BinaryBookshelf smaller = new BinaryBookshelf(a);
+      smaller.insertBook(book0);
+      MappedBookshelf.write(smaller, file);
+      final Path saved = file;
+      String prefix = saved.getFileName().toString();
+      try(Stream<Path> siblings = Files.list(saved.getParent())) {
+        if(MappedBookshelf.open(saved).size() != 1 || siblings.anyMatch(sibling -> 
+            !sibling.equals(saved) && sibling.getFileName().toString().startsWith(prefix))) {
+          System.out.println("ERROR: SAVING SHOULD REPLACE THE FILE WITHOUT LEAVING A TEMP FILE");
+          return false;
+        }
+      }
+      
+      // ensures saving over the file keeps its permissions, where the file system has them
+      if(Files.getFileStore(file).supportsFileAttributeView("posix")) {
+        Set<PosixFilePermission> shared = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(file, shared);
+        MappedBookshelf.write(smaller, file);
+        if(!Files.getPosixFilePermissions(file).equals(shared)) {
+          System.out.println("ERROR: SAVING SHOULD KEEP THE FILE'S PERMISSIONS");
+          return false;
+        }
+      }
+      
+      // should throw exception since a record points past the end of the string table, once the
+      // record is read rather than when the file is opened
+      byte[] bytes = Files.readAllBytes(file);
+      ByteBuffer.wrap(bytes).putInt(20 + 8, Integer.MAX_VALUE - 1);
+      Files.write(file, bytes);
+      MappedBookshelf corrupt = MappedBookshelf.open(file);
+      try {
+        corrupt.get(0);
+        System.out.println("ERROR: READING A RECORD WITH A BAD STRING OFFSET SHOULD THROW");
+        return false;
+      } catch(IllegalStateException ise) {
+        // expected
+      }
+      
+      // should throw exception since the file no longer holds a bookshelf
+      Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+      try {
+        MappedBookshelf.open(file);
+        System.out.println("ERROR: OPENING A FILE THAT ISN'T A BOOKSHELF SHOULD THROW");
+        return false;
+      } catch(IOException ioe) {
+        // expected
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    } finally {
+      try {
+        if(file != null)
+          Files.deleteIfExists(file);
+      } catch(IOException ioe) {
+        // nothing left to clean up
+      }
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests JournaledBookshelf: concurrent inserts, replaying a journal, and cutting off a torn tail
+   *
+   * @return true if the journal replays into the same bookshelf, false otherwise
+   */
+  public static boolean testJournaledBookshelf() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    
+    Path file = null;
+    try {
+      file = Files.createTempFile("bookshelf", ".journal");
+      Files.delete(file);
+      
+      // inserts 800 books from 8 threads at once, each thread waiting on group commits
+      JournaledBookshelf journal = new JournaledBookshelf(new ConcurrentBinaryBookshelf(a), file);
+      AtomicBoolean failed = new AtomicBoolean(false);
+      List<Thread> threads = new ArrayList<Thread>();
+      for(int t = 0; t < 8; ++t) {
+        final int thread = t;
+        threads.add(new Thread(() -> {
+          try {
+            for(int i = 0; i < 100; ++i)
+              journal.insertBook(new Book("Title " + i, 1 + i, "Author" + thread, "\u00c9mile"));
+          } catch(Exception e) {
+            failed.set(true);
+          }
+        }));
+      }
+      for(Thread thread : threads)
+        thread.start();
+      for(Thread thread : threads)
+        thread.join();
+      if(failed.get() || journal.getBookshelf().size() != 800) {
+        System.out.println("ERROR: journal SHOULD HOLD 800 BOOKS AFTER CONCURRENT INSERTS");
+        return false;
+      }
+      
+      // should throw exception since the book is already shelved, without journaling it
+      Book duplicate = journal.getBookshelf().iterator().next();
+      try {
+        journal.insertBook(duplicate);
+        System.out.println("ERROR: INSERTING THE SAME BOOK TWICE SHOULD THROW");
+        return false;
+      } catch(IllegalArgumentException iae) {
+        // expected
+      }
+      
+      // should throw exception since the batch holds a book twice, journaling and shelving none
+      long journaled = Files.size(file);
+      Book repeated = new Book("Repeated", 10, "Author", "F");
+      try {
+        journal.insertBooks(Arrays.asList(new Book("Single", 10, "Author", "F"), repeated, 
+            repeated));
+        System.out.println("ERROR: INSERTING A BATCH WITH A BOOK TWICE SHOULD THROW");
+        return false;
+      } catch(IllegalArgumentException iae) {
+        // expected
+      }
+      if(Files.size(file) != journaled || journal.getBookshelf().size() != 800) {
+        System.out.println("ERROR: A REJECTED BATCH SHOULD BE NEITHER JOURNALED NOR SHELVED");
+        return false;
+      }
+      String listing = journal.getBookshelf().toString();
+      journal.close();
+      
+      // ensures replaying the journal, as if after a restart, restores the same books and numbers
+      // new ones past them
+      Book.resetGenerator();
+      JournaledBookshelf replayed = new JournaledBookshelf(new BinaryBookshelf(a, true), file);
+      if(!replayed.getBookshelf().toString().equals(listing)) {
+        System.out.println("ERROR: REPLAYING THE JOURNAL SHOULD RESTORE THE SAME BOOKS");
+        return false;
+      }
+      if(replayed.getBookshelf().getById(new Book("Coraline", 162, "Gaiman", "Neil").ID) != null) {
+        System.out.println("ERROR: A NEW BOOK SHOULD NOT REUSE THE ID OF A REPLAYED ONE");
+        return false;
+      }
+      replayed.close();
+      
+      // ensures a half written record at the end is cut off and the journal stays usable
+      long length = Files.size(file);
+      Files.write(file, new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+      replayed = new JournaledBookshelf(new BinaryBookshelf(a, true), file);
+      if(Files.size(file) != length || !replayed.getBookshelf().toString().equals(listing)) {
+        System.out.println("ERROR: A TORN RECORD SHOULD BE CUT OFF THE JOURNAL");
+        return false;
+      }
+      Book book0 = new Book("Good Omens", 288, "Gaiman", "Neil");
+      replayed.close();
+      
+      // ensures a book only reaches the bookshelf once its record is in the file
+      final Path journalFile = file;
+      AtomicBoolean early = new AtomicBoolean(false);
+      BinaryBookshelf watched = new BinaryBookshelf(a) {
+        @Override
+        public void insertBook(Book book) {
+          try {
+            if(Files.size(journalFile) <= length)
+              early.set(true);
+          } catch(IOException ioe) {
+            early.set(true);
+          }
+          super.insertBook(book);
+        }
+      };
+      replayed = new JournaledBookshelf(watched, file);
+      replayed.insertBook(book0);
+      if(early.get() || !watched.contains(book0)) {
+        System.out.println("ERROR: A BOOK SHOULD BE JOURNALED BEFORE IT IS SHELVED");
+        return false;
+      }
+      replayed.close();
+      replayed = new JournaledBookshelf(new BinaryBookshelf(a), file);
+      if(replayed.getBookshelf().size() != 801 || !replayed.getBookshelf().contains(book0)) {
+        System.out.println("ERROR: A BOOK INSERTED AFTER RECOVERY SHOULD BE REPLAYED");
+        return false;
+      }
+      
+      // ensures removals are journaled as tombstones that replay applies, and that a book taken
+      // out can come back, while removing a book that isn't shelved journals nothing
+      Iterator<Book> shelved = replayed.getBookshelf().iterator();
+      List<Book> batch = Arrays.asList(shelved.next(), shelved.next(), shelved.next(), 
+          new Book("Neverwhere", 370, "Gaiman", "Neil"));
+      Book returned = shelved.next();
+      journaled = Files.size(file);
+      if(replayed.removeBook(new Book("Stardust", 248, "Gaiman", "Neil")) 
+          || Files.size(file) != journaled) {
+        System.out.println("ERROR: REMOVING A BOOK THAT ISN'T SHELVED SHOULD JOURNAL NOTHING");
+        return false;
+      }
+      if(!replayed.removeBook(book0) || replayed.removeBook(book0) 
+          || replayed.removeBooks(batch) != 3 || !replayed.removeBook(returned)) {
+        System.out.println("ERROR: journal SHOULD REMOVE EACH SHELVED BOOK ONCE");
+        return false;
+      }
+      replayed.insertBook(returned);
+      listing = replayed.getBookshelf().toString();
+      replayed.close();
+      replayed = new JournaledBookshelf(new BinaryBookshelf(a), file);
+      if(replayed.getBookshelf().size() != 797 || replayed.getBookshelf().contains(book0)
+          || !replayed.getBookshelf().toString().equals(listing)) {
+        System.out.println("ERROR: REPLAYING THE JOURNAL SHOULD APPLY ITS TOMBSTONES");
+        return false;
+      }
+      replayed.close();
+      
+      // should throw exception since the journal is closed
+      try {
+        replayed.insertBook(new Book("Coraline", 162, "Gaiman", "Neil"));
+        System.out.println("ERROR: INSERTING INTO A CLOSED JOURNAL SHOULD THROW");
+        return false;
+      } catch(IllegalStateException ise) {
+        // expected
+      }
+      
+      // closes journals while 8 threads insert into them, then ensures each insert either became
+      // durable or was refused because the journal had closed
+      for(int trial = 0; trial < 20; ++trial) {
+        Files.deleteIfExists(file);
+        JournaledBookshelf closing = new JournaledBookshelf(new ConcurrentBinaryBookshelf(a), file);
+        List<Book> inserted = Collections.synchronizedList(new ArrayList<Book>());
+        threads.clear();
+        for(int t = 0; t < 8; ++t) {
+          threads.add(new Thread(() -> {
+            try {
+              for(int i = 0; i < 50; ++i) {
+                Book book = new Book("Closing " + i, 1 + i, "Author", "F");
+                closing.insertBook(book);
+                inserted.add(book);
+              }
+            } catch(IllegalStateException ise) {
+              // the journal closed, so this insert and every later one are refused
+            } catch(Exception e) {
+              failed.set(true);
+            }
+          }));
+        }
+        for(Thread thread : threads)
+          thread.start();
+        closing.close();
+        for(Thread thread : threads)
+          thread.join();
+        
+        replayed = new JournaledBookshelf(new BinaryBookshelf(a), file);
+        BinaryBookshelf restored = replayed.getBookshelf();
+        replayed.close();
+        if(failed.get() || restored.size() != inserted.size() 
+            || restored.size() != closing.getBookshelf().size()) {
+          System.out.println("ERROR: EVERY INSERT THAT RETURNED BEFORE CLOSE SHOULD BE REPLAYED");
+          return false;
+        }
+      }
+      
+      // ensures a bookshelf numbered by its own allocator, replayed with a fresh one as if after a
+      // restart, never gives a new book the ID of a replayed one
+      Files.deleteIfExists(file);
+      BookIdAllocator ids = new BookIdAllocator();
+      JournaledBookshelf numbered = new JournaledBookshelf(new BinaryBookshelf(a), file, ids);
+      for(int i = 0; i < 50; ++i)
+        numbered.insertBook(new Book("Numbered " + i, 1 + i, "Author", "F", ids));
+      numbered.close();
+      ids = new BookIdAllocator();
+      numbered = new JournaledBookshelf(new BinaryBookshelf(a), file, ids);
+      numbered.close();
+      if(numbered.getBookshelf().getById(new Book("Coraline", 162, "Gaiman", "Neil", ids).ID) 
+          != null) {
+        System.out.println("ERROR: A NEW BOOK SHOULD NOT REUSE THE ID OF A REPLAYED ONE");
+        return false;
+      }
+      
+      // should throw exception since the file is not a journal
+      Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+      try {
+        new JournaledBookshelf(new BinaryBookshelf(a), file).close();
+        System.out.println("ERROR: OPENING A FILE THAT ISN'T A JOURNAL SHOULD THROW");
+        return false;
+      } catch(IOException ioe) {
+        // expected
+      }
+    } catch(Exception e) {
+      System.out.println("An unexpected error has occured");
+      return false;
+    } finally {
+      try {
+        if(file != null)
+          Files.deleteIfExists(file);
+      } catch(IOException ioe) {
+        // nothing left to clean up
+      }
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests OffHeapBookshelf against a BinaryBookshelf holding the same books
+   *
+   * @return true if both bookshelves agree, false otherwise
+   */
+  public static boolean testOffHeapBookshelf() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates an OffHeapBookshelf and a BinaryBookshelf to check it against
+    OffHeapBookshelf offHeap = new OffHeapBookshelf(a);
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // inserts 5000 books in scrambled order, enough to grow the columns and the arena
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 5000; ++i) {
+      int j = (i * 7919) % 5000;
+      Book book = new Book("Title " + j + " \u00e9dition", 1 + j % 300, "Author" + j % 40, "First");
+      books.add(book);
+      offHeap.insertBook(book);
+      bookshelf.insertBook(book);
+    }
+    
+    // ensures both bookshelves list the same books in the same order
+    if(offHeap.size() != 5000 || !offHeap.toString().equals(bookshelf.toString())) {
+      System.out.println("ERROR: offHeap SHOULD LIST THE SAME BOOKS AS bookshelf");
+      return false;
+    }
+    
+    // ensures every book is found by handle and by contains, but not one that was never added
+    for(int i = 0; i < books.size(); ++i) {
+      if(!offHeap.get(i).equals(books.get(i)) || !offHeap.contains(books.get(i))) {
+        System.out.println("ERROR: offHeap SHOULD CONTAIN " + books.get(i));
+        return false;
+      }
+    }
+    if(offHeap.contains(new Book("Title 1 \u00e9dition", 2, "Author1", "First"))) {
+      System.out.println("ERROR: offHeap SHOULD NOT CONTAIN A BOOK THAT WAS NOT ADDED");
+      return false;
+    }
+    
+    // ensures author lookups match, including an author with no books
+    String[] authors = {"Author7, First", "Author39, First", "Author, First", "Zed, First"};
+    for(int i = 0; i < authors.length; ++i) {
+      if(!offHeap.getBooksByAuthor(authors[i]).equals(bookshelf.getBooksByAuthor(authors[i]))) {
+        System.out.println("ERROR: offHeap SHOULD FIND THE SAME BOOKS BY " + authors[i]);
+        return false;
+      }
+    }
+    
+    // should throw exception since the book is already in the bookshelf
+    try {
+      offHeap.insertBook(books.get(42));
+      System.out.println("ERROR: INSERTING THE SAME BOOK TWICE SHOULD THROW");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // should throw exception since there is no book with that handle
+    try {
+      offHeap.get(5000);
+      System.out.println("ERROR: GETTING A HANDLE PAST THE END SHOULD THROW");
+      return false;
+    } catch(IndexOutOfBoundsException ioobe) {
+      // expected
+    }
+    
+    // inserts books by authors that are short, share their first chars, differ only past the
+    // fourth char or hold chars above 0x7fff, which the author prefix column must order right
+    String[] lastnames = {"", "A", "Ab", "Ab\u0000", "Abc", "Abcd", "Abcde", "Abcdf", "B\uffff", 
+        "\u00e9t\u00e9", "\u8001", "Z"};
+    OffHeapBookshelf mixed = new OffHeapBookshelf(a);
+    BinaryBookshelf mixedShelf = new BinaryBookshelf(a);
+    for(int i = 0; i < 600; ++i) {
+      Book book = new Book("Title " + i, 1 + i, lastnames[(i * 7) % lastnames.length], 
+          i % 2 == 0 ? "" : "F");
+      mixed.insertBook(book);
+      mixedShelf.insertBook(book);
+    }
+    if(!mixed.toString().equals(mixedShelf.toString())) {
+      System.out.println("ERROR: mixed SHOULD ORDER SHARED AUTHOR PREFIXES LIKE bookshelf");
+      return false;
+    }
+    for(Book book : mixedShelf) {
+      if(!mixed.contains(book) 
+          || !mixed.getBooksByAuthor(book.getAuthor()).equals(mixedShelf.getBooksByAuthor(
+          book.getAuthor()))) {
+        System.out.println("ERROR: mixed SHOULD FIND " + book + " AND ITS AUTHOR'S BOOKS");
+        return false;
+      }
+    }
+    
+    // ensures clearing empties the bookshelf and it can be filled again
+    offHeap.clear();
+    if(!offHeap.isEmpty() || offHeap.contains(books.get(0)) || !offHeap.toString().equals("")) {
+      System.out.println("ERROR: offHeap SHOULD BE EMPTY AFTER CLEAR");
+      return false;
+    }
+    offHeap.insertBook(books.get(0));
+    if(offHeap.size() != 1 || !offHeap.get(0).equals(books.get(0))) {
+      System.out.println("ERROR: offHeap SHOULD HOLD 1 BOOK AFTER CLEAR AND INSERT");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests ArrayBinaryBookshelf against a BinaryBookshelf holding the same books, and its snapshots
+   *
+   * @return true if both bookshelves agree and snapshots don't change, false otherwise
+   */
+  public static boolean testArrayBinaryBookshelf() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.ID, Attribute.TITLE};
+    // creates an ArrayBinaryBookshelf and a BinaryBookshelf to check it against
+    ArrayBinaryBookshelf arrayShelf = new ArrayBinaryBookshelf(a);
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // inserts 3000 books in increasing order, which would be a list without balancing
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 3000; ++i) {
+      Book book = new Book("Title " + i, 1 + i % 200, "Author" + i / 100, "First");
+      books.add(book);
+      arrayShelf.insertBook(book);
+      bookshelf.insertBook(book);
+    }
+    ArrayBinaryBookshelf snapshot = arrayShelf.snapshot();
+    String listing = bookshelf.toString();
+    
+    // ensures both bookshelves list the same books and every book is in its slot
+    if(arrayShelf.size() != 3000 || !arrayShelf.toString().equals(listing)) {
+      System.out.println("ERROR: arrayShelf SHOULD LIST THE SAME BOOKS AS bookshelf");
+      return false;
+    }
+    for(int i = 0; i < books.size(); ++i) {
+      if(arrayShelf.get(i) != books.get(i) || !arrayShelf.contains(books.get(i))) {
+        System.out.println("ERROR: arrayShelf SHOULD CONTAIN " + books.get(i) + " IN SLOT " + i);
+        return false;
+      }
+    }
+    if(arrayShelf.contains(new Book("Title 5", 6, "Author0", "First"))) {
+      System.out.println("ERROR: arrayShelf SHOULD NOT CONTAIN A BOOK THAT WAS NOT ADDED");
+      return false;
+    }
+    
+    // ensures author lookups match, including an author with no books
+    String[] authors = {"Author0, First", "Author17, First", "Author29, First", "Author3, Firs"};
+    for(int i = 0; i < authors.length; ++i) {
+      if(!arrayShelf.getBooksByAuthor(authors[i]).equals(bookshelf.getBooksByAuthor(authors[i]))) {
+        System.out.println("ERROR: arrayShelf SHOULD FIND THE SAME BOOKS BY " + authors[i]);
+        return false;
+      }
+    }
+    
+    // should throw exception since the book is already in the bookshelf
+    try {
+      arrayShelf.insertBook(books.get(7));
+      System.out.println("ERROR: INSERTING THE SAME BOOK TWICE SHOULD THROW");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // inserts books by authors that are short, share their first chars, differ only past the
+    // fourth char or hold chars above 0x7fff, which the author prefix column must order right
+    String[] lastnames = {"", "A", "Ab", "Ab\u0000", "Abc", "Abcd", "Abcde", "Abcdf", "B\uffff", 
+        "\u00e9t\u00e9", "\u8001", "Z"};
+    ArrayBinaryBookshelf mixed = new ArrayBinaryBookshelf(a);
+    BinaryBookshelf mixedShelf = new BinaryBookshelf(a);
+    for(int i = 0; i < 600; ++i) {
+      Book book = new Book("Title " + i, 1 + i, lastnames[(i * 7) % lastnames.length], 
+          i % 2 == 0 ? "" : "F");
+      mixed.insertBook(book);
+      mixedShelf.insertBook(book);
+    }
+    if(!mixed.toString().equals(mixedShelf.toString())) {
+      System.out.println("ERROR: mixed SHOULD ORDER SHARED AUTHOR PREFIXES LIKE bookshelf");
+      return false;
+    }
+    for(Book book : mixedShelf) {
+      if(!mixed.contains(book) 
+          || !mixed.getBooksByAuthor(book.getAuthor()).equals(mixedShelf.getBooksByAuthor(
+          book.getAuthor()))) {
+        System.out.println("ERROR: mixed SHOULD FIND " + book + " AND ITS AUTHOR'S BOOKS");
+        return false;
+      }
+    }
+    
+    // ensures the snapshot keeps its books after the bookshelf changes, and can't be changed
+    arrayShelf.insertBook(new Book("Coraline", 162, "Gaiman", "Neil"));
+    arrayShelf.clear();
+    if(!arrayShelf.isEmpty() || snapshot.size() != 3000 || !snapshot.toString().equals(listing)
+        || !snapshot.isReadOnly() || snapshot.snapshot() != snapshot) {
+      System.out.println("ERROR: snapshot SHOULD KEEP THE 3000 BOOKS IT WAS TAKEN WITH");
+      return false;
+    }
+    try {
+      snapshot.insertBook(new Book("Good Omens", 288, "Gaiman", "Neil"));
+      System.out.println("ERROR: INSERTING INTO A SNAPSHOT SHOULD THROW");
+      return false;
+    } catch(UnsupportedOperationException uoe) {
+      // expected
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests BTreeBookshelf at the smallest and the default fan-out against a BinaryBookshelf
+   *
+   * @return true if the bookshelves agree, false otherwise
+   */
+  public static boolean testBTreeBookshelf() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.ID, Attribute.PAGECOUNT};
+    // creates B-trees with the smallest and the default fan-out, and a BinaryBookshelf
+    BTreeBookshelf narrow = new BTreeBookshelf(a, 4);
+    BTreeBookshelf wide = new BTreeBookshelf(a);
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // inserts 4000 books in scrambled order
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 4000; ++i) {
+      int j = (i * 2741) % 4000;
+      Book book = new Book("Title " + j, 1 + j % 250, "Author" + j % 60, "First");
+      books.add(book);
+      narrow.insertBook(book);
+      wide.insertBook(book);
+      bookshelf.insertBook(book);
+    }
+    
+    // ensures the B-trees list the same books as bookshelf and are as short as their fan-out allows
+    String listing = bookshelf.toString();
+    if(narrow.size() != 4000 || !narrow.toString().equals(listing) || wide.size() != 4000
+        || !wide.toString().equals(listing)) {
+      System.out.println("ERROR: THE B-TREES SHOULD LIST THE SAME BOOKS AS bookshelf");
+      return false;
+    }
+    if(narrow.getHeight() > 12 || wide.getHeight() > 3) {
+      System.out.println("ERROR: THE B-TREES ARE TALLER THAN THEIR FAN-OUT ALLOWS");
+      return false;
+    }
+    
+    // ensures every book is found, but not one that was never added
+    for(Book book : books) {
+      if(!narrow.contains(book) || !wide.contains(book)) {
+        System.out.println("ERROR: THE B-TREES SHOULD CONTAIN " + book);
+        return false;
+      }
+    }
+    Book missing = new Book("Title 0", 1, "Author0", "First");
+    if(narrow.contains(missing) || wide.contains(missing)) {
+      System.out.println("ERROR: THE B-TREES SHOULD NOT CONTAIN A BOOK THAT WAS NOT ADDED");
+      return false;
+    }
+    
+    // ensures author lookups match, including authors with no books
+    String[] authors = {"Author0, First", "Author59, First", "Author33, First", "Aaron, First",
+        "Zed, First"};
+    for(int i = 0; i < authors.length; ++i) {
+      ArrayList<Book> expected = bookshelf.getBooksByAuthor(authors[i]);
+      if(!narrow.getBooksByAuthor(authors[i]).equals(expected)
+          || !wide.getBooksByAuthor(authors[i]).equals(expected)) {
+        System.out.println("ERROR: THE B-TREES SHOULD FIND THE SAME BOOKS BY " + authors[i]);
+        return false;
+      }
+    }
+    
+    // should throw exception since the book is already in the bookshelf
+    try {
+      narrow.insertBook(books.get(1234));
+      System.out.println("ERROR: INSERTING THE SAME BOOK TWICE SHOULD THROW");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // inserts books by authors that are short, share their first chars, differ only past the
+    // fourth char or hold chars above 0x7fff, which the packed author prefixes must order right
+    String[] lastnames = {"", "A", "Ab", "Ab\u0000", "Abc", "Abcd", "Abcde", "Abcdf", "B\uffff", 
+        "\u00e9t\u00e9", "\u8001", "Z"};
+    BTreeBookshelf mixed = new BTreeBookshelf(a, 4);
+    BinaryBookshelf mixedShelf = new BinaryBookshelf(a);
+    for(int i = 0; i < 600; ++i) {
+      Book book = new Book("Title " + i, 1 + i, lastnames[(i * 7) % lastnames.length], 
+          i % 2 == 0 ? "" : "F");
+      mixed.insertBook(book);
+      mixedShelf.insertBook(book);
+    }
+    if(!mixed.toString().equals(mixedShelf.toString())) {
+      System.out.println("ERROR: THE B-TREE SHOULD ORDER SHARED AUTHOR PREFIXES LIKE bookshelf");
+      return false;
+    }
+    for(Book book : mixedShelf) {
+      if(!mixed.contains(book) 
+          || !mixed.getBooksByAuthor(book.getAuthor()).equals(mixedShelf.getBooksByAuthor(
+          book.getAuthor()))) {
+        System.out.println("ERROR: THE B-TREE SHOULD FIND " + book + " AND ITS AUTHOR'S BOOKS");
+        return false;
+      }
+    }
+    
+    // should throw exception since a fan-out of 3 is too small
+    try {
+      new BTreeBookshelf(a, 3);
+      System.out.println("ERROR: A FAN-OUT BELOW 4 SHOULD THROW");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // ensures clearing empties the bookshelf
+    narrow.clear();
+    if(!narrow.isEmpty() || narrow.iterator().hasNext() || narrow.contains(books.get(0))
+        || narrow.getHeight() != 1) {
+      System.out.println("ERROR: narrow SHOULD BE EMPTY AFTER CLEAR");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests getBooksByPageCount and getBooksByTitlePrefix against full scans, as the bookshelf, its
+   * snapshots and a ConcurrentBinaryBookshelf keep changing
+   *
+   * @return true if every query matches its scan, false otherwise
+   */
+  public static boolean testSecondaryIndexes() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.ID, Attribute.TITLE, Attribute.PAGECOUNT};
+    // creates a plain and a concurrent bookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a);
+    ConcurrentBinaryBookshelf concurrent = new ConcurrentBinaryBookshelf(a);
+    
+    // inserts 500 books before the indexes exist
+    List<Book> books = new ArrayList<Book>();
+    String[] starts = {"The ", "A ", "Then ", "Th", "Zebra "};
+    for(int i = 0; i < 500; ++i)
+      books.add(new Book(starts[i % starts.length] + i, 1 + (i * 37) % 700, "Author" + i % 9, "F"));
+    bookshelf.insertBooks(books.subList(0, 250));
+    concurrent.insertBooks(books.subList(0, 250));
+    
+    // queries once to build the indexes, then keeps inserting one at a time and in a batch
+    for(int round = 0; round < 3; ++round) {
+      if(round == 1) {
+        for(int i = 250; i < 300; ++i) {
+          bookshelf.insertBook(books.get(i));
+          concurrent.insertBook(books.get(i));
+        }
+      } else if(round == 2) {
+        bookshelf.insertBooks(books.subList(300, 500));
+        concurrent.insertBooks(books.subList(300, 500));
+      }
+      
+      BinaryBookshelf[] shelves = {bookshelf, concurrent, bookshelf.snapshot(), concurrent.snapshot()};
+      for(BinaryBookshelf shelf : shelves) {
+        // ensures page ranges match a full scan, including an empty and a backwards range
+        int[][] ranges = {{300, 500}, {1, 1}, {650, 10000}, {701, 800}, {500, 300}};
+        for(int[] range : ranges) {
+          List<Book> expected = shelf.stream().filter(book -> book.getPageCount() >= range[0]
+              && book.getPageCount() <= range[1]).sorted((one, two) -> one.getPageCount() 
+              != two.getPageCount() ? one.getPageCount() - two.getPageCount() 
+              : shelf.getComparator().compare(one, two)).collect(Collectors.toList());
+          if(!shelf.getBooksByPageCount(range[0], range[1]).equals(expected)) {
+            System.out.println("ERROR: getBooksByPageCount(" + range[0] + ", " + range[1] 
+                + ") SHOULD MATCH A FULL SCAN");
+            return false;
+          }
+        }
+        
+        // ensures title prefixes match a full scan
+        String[] prefixes = {"The ", "Th", "A 1", "", "Zz", "Then 4"};
+        for(String prefix : prefixes) {
+          List<Book> expected = shelf.stream().filter(book -> book.getTitle().startsWith(prefix))
+              .sorted((one, two) -> !one.getTitle().equals(two.getTitle()) 
+              ? one.getTitle().compareTo(two.getTitle()) : shelf.getComparator().compare(one, two))
+              .collect(Collectors.toList());
+          if(!shelf.getBooksByTitlePrefix(prefix).equals(expected)) {
+            System.out.println("ERROR: getBooksByTitlePrefix(\"" + prefix 
+                + "\") SHOULD MATCH A FULL SCAN");
+            return false;
+          }
+        }
+      }
+    }
+    
+    // ensures a snapshot's index keeps only the books it was taken with
+    BinaryBookshelf snapshot = bookshelf.snapshot();
+    Book book0 = new Book("The Graveyard Book", 312, "Gaiman", "Neil");
+    bookshelf.insertBook(book0);
+    if(snapshot.getBooksByTitlePrefix("The G").size() != 0 
+        || !bookshelf.getBooksByTitlePrefix("The G").contains(book0)) {
+      System.out.println("ERROR: ONLY bookshelf SHOULD FIND THE BOOK INSERTED AFTER THE SNAPSHOT");
+      return false;
+    }
+    
+    // ensures clearing empties the indexes too
+    bookshelf.clear();
+    concurrent.clear();
+    if(bookshelf.getBooksByPageCount(1, 10000).size() != 0 
+        || concurrent.getBooksByTitlePrefix("").size() != 0) {
+      System.out.println("ERROR: THE INDEXES SHOULD BE EMPTY AFTER CLEAR");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests getById on plain, snapshot and concurrent bookshelves, including IDs shared by books
+   * from different allocators
+   *
+   * @return true if every book is found by ID, false otherwise
+   */
+  public static boolean testGetById() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a plain and a concurrent bookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    ConcurrentBinaryBookshelf concurrent = new ConcurrentBinaryBookshelf(a);
+    
+    // ensures an empty bookshelf finds nothing
+    if(bookshelf.getById(0) != null) {
+      System.out.println("ERROR: AN EMPTY BOOKSHELF SHOULD NOT FIND ANY ID");
+      return false;
+    }
+    
+    // inserts 3000 books: a third before the index exists, a third one at a time, a third at once
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 3000; ++i)
+      books.add(new Book("Title " + i, 1 + i % 300, "Author" + i % 13, "F"));
+    bookshelf.insertBooks(books.subList(0, 1000));
+    concurrent.insertBooks(books.subList(0, 1000));
+    BinaryBookshelf snapshot = bookshelf.snapshot();
+    bookshelf.getById(0);
+    concurrent.getById(0);
+    for(int i = 1000; i < 2000; ++i) {
+      bookshelf.insertBook(books.get(i));
+      concurrent.insertBook(books.get(i));
+    }
+    bookshelf.insertBooks(books.subList(2000, 3000));
+    concurrent.insertBooks(books.subList(2000, 3000));
+    
+    // ensures every book is found by ID, and the snapshot only finds its own books
+    for(int i = 0; i < books.size(); ++i) {
+      Book book = books.get(i);
+      if(bookshelf.getById(book.ID) != book || concurrent.getById(book.ID) != book) {
+        System.out.println("ERROR: getById(" + book.ID + ") SHOULD FIND " + book);
+        return false;
+      }
+      if(snapshot.getById(book.ID) != (i < 1000 ? book : null)) {
+        System.out.println("ERROR: snapshot SHOULD ONLY FIND THE BOOKS IT WAS TAKEN WITH");
+        return false;
+      }
+    }
+    if(bookshelf.getById(-1) != null || bookshelf.getById(3000) != null) {
+      System.out.println("ERROR: getById SHOULD NOT FIND AN ID NO BOOK HAS");
+      return false;
+    }
+    
+    // ensures a book sharing an ID from another allocator doesn't hide the first one
+    Book twin = new Book("Twin", 10, "Author0", "F", new BookIdAllocator());
+    bookshelf.insertBook(twin);
+    if(bookshelf.getById(twin.ID) != books.get(0)) {
+      System.out.println("ERROR: getById SHOULD FIND THE FIRST BOOK INDEXED WITH A SHARED ID");
+      return false;
+    }
+    
+    // ensures clearing empties the index
+    bookshelf.clear();
+    concurrent.clear();
+    if(bookshelf.getById(books.get(5).ID) != null || concurrent.getById(books.get(5).ID) != null) {
+      System.out.println("ERROR: getById SHOULD FIND NOTHING AFTER CLEAR");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests removeBook and removeBooks, including rebalancing, indexes, snapshots and concurrency
+   *
+   * @return true if the right books are removed and the bookshelf stays balanced, false otherwise
+   */
+  public static boolean testRemoveBook() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.TITLE, Attribute.ID};
+    // creates a balanced and a concurrent bookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    ConcurrentBinaryBookshelf concurrent = new ConcurrentBinaryBookshelf(a);
+    
+    // inserts 4000 books in increasing order and builds every index
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 4000; ++i)
+      books.add(new Book("Title " + i, 1 + i % 400, "Author" + i / 400, "F"));
+    for(Book book : books) {
+      bookshelf.insertBook(book);
+      concurrent.insertBook(book);
+    }
+    bookshelf.getById(0);
+    bookshelf.getBooksByPageCount(1, 1);
+    bookshelf.getBooksByTitlePrefix("");
+    BinaryBookshelf snapshot = bookshelf.snapshot();
+    String listing = bookshelf.toString();
+    
+    // removes every other book one at a time
+    for(int i = 0; i < books.size(); i += 2) {
+      if(!bookshelf.removeBook(books.get(i)) || !concurrent.removeBook(books.get(i))) {
+        System.out.println("ERROR: removeBook SHOULD REMOVE " + books.get(i));
+        return false;
+      }
+    }
+    
+    // should return false since the book was already removed
+    if(bookshelf.removeBook(books.get(0))) {
+      System.out.println("ERROR: REMOVING A BOOK THAT IS NOT SHELVED SHOULD RETURN false");
+      return false;
+    }
+    
+    // ensures the sizes, contents and indexes only hold the odd books, and the tree is balanced
+    if(bookshelf.size() != 2000 || concurrent.size() != 2000) {
+      System.out.println("ERROR: BOTH BOOKSHELVES SHOULD HOLD 2000 BOOKS");
+      return false;
+    }
+    for(int i = 0; i < books.size(); ++i) {
+      Book book = books.get(i);
+      boolean kept = i % 2 == 1;
+      if(bookshelf.contains(book) != kept || concurrent.contains(book) != kept
+          || (bookshelf.getById(book.ID) == book) != kept) {
+        System.out.println("ERROR: " + book + (kept ? " SHOULD" : " SHOULD NOT") + " BE SHELVED");
+        return false;
+      }
+    }
+    if(bookshelf.getBooksByPageCount(1, 400).size() != 2000
+        || bookshelf.getBooksByTitlePrefix("Title 1").size() != 556
+        || bookshelf.getRoot().getHeight() > 16) {
+      System.out.println("ERROR: THE INDEXES AND THE TREE SHOULD MATCH THE REMAINING BOOKS");
+      return false;
+    }
+    
+    // removes most of the rest in one batch, with duplicates and books that are already gone
+    List<Book> batch = new ArrayList<Book>(books.subList(0, 3990));
+    batch.add(books.get(1));
+    if(bookshelf.removeBooks(batch) != 1995 || concurrent.removeBooks(batch) != 1995) {
+      System.out.println("ERROR: removeBooks SHOULD REMOVE 1995 BOOKS");
+      return false;
+    }
+    String expected = "";
+    for(int i = 3991; i < 4000; i += 2)
+      expected += "\n" + books.get(i);
+    if(!bookshelf.toString().equals(expected) || !concurrent.toString().equals(expected)
+        || bookshelf.getById(books.get(1).ID) != null
+        || bookshelf.getBooksByPageCount(1, 400).size() != 5) {
+      System.out.println("ERROR: ONLY THE LAST 5 ODD BOOKS SHOULD BE LEFT");
+      return false;
+    }
+    
+    // ensures the snapshot still holds every book and can't be changed
+    if(snapshot.size() != 4000 || !snapshot.toString().equals(listing)
+        || snapshot.getBooksByTitlePrefix("Title 1").size() != 1111) {
+      System.out.println("ERROR: snapshot SHOULD KEEP ALL 4000 BOOKS");
+      return false;
+    }
+    try {
+      snapshot.removeBook(books.get(1));
+      System.out.println("ERROR: REMOVING FROM A SNAPSHOT SHOULD THROW");
+      return false;
+    } catch(UnsupportedOperationException uoe) {
+      // expected
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests containsBooks against contains on a balanced and a degenerate plain bookshelf
+   *
+   * @return true if every answer matches contains, false otherwise
+   */
+  public static boolean testContainsBooks() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a balanced bookshelf and a plain one that will be a single long path
+    BinaryBookshelf balanced = new BinaryBookshelf(a, true);
+    BinaryBookshelf plain = new BinaryBookshelf(a);
+    
+    // shelves every third of 6000 books, inserted in order
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 6000; ++i) {
+      Book book = new Book(String.format("Title %05d", i), 100, "Author", "F");
+      books.add(book);
+      if(i % 3 == 0) {
+        balanced.insertBook(book);
+        plain.insertBook(book);
+      }
+    }
+    
+    // ensures an empty probe list gives an empty answer
+    if(balanced.containsBooks(new ArrayList<Book>()).length != 0) {
+      System.out.println("ERROR: NO PROBES SHOULD GIVE NO ANSWERS");
+      return false;
+    }
+    
+    // probes in scrambled order, with every book once and some twice
+    List<Book> probes = new ArrayList<Book>();
+    for(int i = 0; i < 6000; ++i)
+      probes.add(books.get((i * 4001) % 6000));
+    probes.addAll(books.subList(100, 200));
+    boolean[] balancedFound = balanced.containsBooks(probes);
+    boolean[] plainFound = plain.containsBooks(probes.toArray(new Book[probes.size()]));
+    
+    // ensures every answer lines up with its probe
+    if(balancedFound.length != probes.size() || plainFound.length != probes.size()) {
+      System.out.println("ERROR: THERE SHOULD BE ONE ANSWER PER PROBE");
+      return false;
+    }
+    for(int i = 0; i < probes.size(); ++i) {
+      boolean expected = balanced.contains(probes.get(i));
+      if(balancedFound[i] != expected || plainFound[i] != expected) {
+        System.out.println("ERROR: containsBooks SHOULD ANSWER " + expected + " FOR " 
+            + probes.get(i));
+        return false;
+      }
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests union() by merging bookshelves that share some books under each DuplicatePolicy, and
+   * merging two large ones so the merge and build are split across threads
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testUnion() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a second, different Attribute array
+    Attribute[] b = {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.TITLE, Attribute.ID};
+    // creates two bookshelves, one plain and one balanced
+    BinaryBookshelf first = new BinaryBookshelf(a);
+    BinaryBookshelf second = new BinaryBookshelf(a, true);
+    
+    // shelves books 0 to 59 on the first and 40 to 99 on the second, the shared ones as copies with
+    // the same ID on the second
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 100; ++i)
+      books.add(new Book(String.format("Title %03d", i), 100 + i, "Author", "F"));
+    for(int i = 0; i < 60; ++i)
+      first.insertBook(books.get(i));
+    List<Book> copies = new ArrayList<Book>();
+    for(int i = 40; i < 100; ++i) {
+      Book copy = books.get(i);
+      if(i < 60)
+        copy = new Book(copy.ID, copy.getTitle(), copy.getPageCount(), 
+            copy.getAuthorLastname(), copy.getAuthorFirstname());
+      copies.add(copy);
+      second.insertBook(copy);
+    }
+    
+    // ensures KEEP_FIRST keeps every book once, in order, with the first shelf's shared objects
+    BinaryBookshelf union = first.union(second, DuplicatePolicy.KEEP_FIRST);
+    if(union.size() != 100) {
+      System.out.println("ERROR: UNION SHOULD HOLD 100 BOOKS BUT HOLDS " + union.size());
+      return false;
+    }
+    int index = 0;
+    for(Book book : union) {
+      if(book != books.get(index)) {
+        System.out.println("ERROR: KEEP_FIRST UNION SHOULD HAVE " + books.get(index) + " AT " 
+            + index + " BUT HAS " + book);
+        return false;
+      }
+      index++;
+    }
+    
+    // ensures KEEP_SECOND keeps the second shelf's objects for the shared books
+    union = first.union(second, DuplicatePolicy.KEEP_SECOND);
+    index = 0;
+    for(Book book : union) {
+      Book expected = index < 40 ? books.get(index) : copies.get(index - 40);
+      if(book != expected) {
+        System.out.println("ERROR: KEEP_SECOND UNION SHOULD HAVE " + expected + " AT " + index 
+            + " BUT HAS " + book);
+        return false;
+      }
+      index++;
+    }
+    
+    // ensures the union is balanced, writable, and neither source changed
+    if(!union.isBalanced() || union.getRoot().getHeight() != 7) {
+      System.out.println("ERROR: UNION OF 100 BOOKS SHOULD BE A BALANCED TREE OF HEIGHT 7");
+      return false;
+    }
+    union.insertBook(new Book("Title 100", 200, "Author", "F"));
+    if(union.size() != 101 || first.size() != 60 || second.size() != 60) {
+      System.out.println("ERROR: UNION SHOULD ACCEPT NEW BOOKS WITHOUT CHANGING ITS SOURCES");
+      return false;
+    }
+    
+    // ensures REJECT throws on a shared book, but merges disjoint bookshelves
+    try {
+      first.union(second, DuplicatePolicy.REJECT);
+      System.out.println("ERROR: REJECT UNION SHOULD THROW ON A SHARED BOOK");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    BinaryBookshelf rest = new BinaryBookshelf(a);
+    rest.insertBooks(books.subList(60, 100));
+    if(first.union(rest, DuplicatePolicy.REJECT).size() != 100) {
+      System.out.println("ERROR: REJECT UNION OF DISJOINT BOOKSHELVES SHOULD HOLD EVERY BOOK");
+      return false;
+    }
+    
+    // ensures bookshelves sorted differently can't be merged
+    try {
+      first.union(new BinaryBookshelf(b), DuplicatePolicy.KEEP_FIRST);
+      System.out.println("ERROR: UNION OF DIFFERENT SORTLISTS SHOULD THROW");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // ensures a union with an empty bookshelf is the other one
+    if(new BinaryBookshelf(a).union(first, DuplicatePolicy.REJECT).size() != 60) {
+      System.out.println("ERROR: UNION WITH AN EMPTY BOOKSHELF SHOULD HOLD THE OTHER'S BOOKS");
+      return false;
+    }
+    
+    // merges two interleaved bookshelves of 20000 books sharing every fourth one
+    BinaryBookshelf evens = new BinaryBookshelf(a, true);
+    BinaryBookshelf others = new BinaryBookshelf(a, true);
+    List<Book> large = new ArrayList<Book>();
+    for(int i = 0; i < 30000; ++i)
+      large.add(new Book(String.format("Large %05d", i), 100, "Author", "F"));
+    List<Book> evenBooks = new ArrayList<Book>();
+    List<Book> otherBooks = new ArrayList<Book>();
+    for(int i = 0; i < 30000; ++i) {
+      if(i % 2 == 0)
+        evenBooks.add(large.get(i));
+      if(i % 2 == 1 || i % 4 == 0)
+        otherBooks.add(large.get(i));
+    }
+    evens.insertBooks(evenBooks);
+    others.insertBooks(otherBooks);
+    union = evens.union(others, DuplicatePolicy.KEEP_SECOND);
+    
+    // ensures every book is there once, in order, in a tree of the least possible height
+    if(union.size() != 30000 || union.getRoot().getHeight() != 15) {
+      System.out.println("ERROR: LARGE UNION SHOULD HOLD 30000 BOOKS IN A TREE OF HEIGHT 15");
+      return false;
+    }
+    index = 0;
+    for(Book book : union) {
+      if(book != large.get(index)) {
+        System.out.println("ERROR: LARGE UNION SHOULD HAVE " + large.get(index) + " AT " + index);
+        return false;
+      }
+      index++;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests sortedBy() by re-sorting a bookshelf large enough to be built across threads, and
+   * checking the copy's order, balance and independence from the original
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testSortedBy() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a second valid Attribute array that sorts by page count before title
+    Attribute[] b = {Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.ID, Attribute.TITLE};
+    // creates an invalid Attribute array
+    Attribute[] c = {Attribute.TITLE, Attribute.AUTHOR, Attribute.PAGECOUNT, Attribute.ID};
+    // creates a plain bookshelf
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a);
+    
+    // shelves 20000 books by 10 authors, whose page counts run opposite to their titles
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 20000; ++i)
+      books.add(new Book(String.format("Title %05d", i), 50000 - i, "Author" + (i % 10), "F"));
+    Collections.shuffle(books, new Random(22));
+    bookshelf.insertBooks(books);
+    
+    // re-sorts by page count
+    BinaryBookshelf byPages = bookshelf.sortedBy(b);
+    
+    // ensures the copy holds every book in the new order, in a tree of the least possible height
+    List<Book> expected = new ArrayList<Book>(books);
+    Collections.sort(expected, byPages.getComparator());
+    if(byPages.size() != 20000 || byPages.getRoot().getHeight() != 15) {
+      System.out.println("ERROR: RE-SORTED BOOKSHELF SHOULD HOLD 20000 BOOKS IN HEIGHT 15");
+      return false;
+    }
+    int index = 0;
+    for(Book book : byPages) {
+      if(book != expected.get(index)) {
+        System.out.println("ERROR: RE-SORTED BOOKSHELF SHOULD HAVE " + expected.get(index) 
+            + " AT " + index + " BUT HAS " + book);
+        return false;
+      }
+      index++;
+    }
+    if(!Arrays.equals(byPages.getSortList(), b) || byPages.isBalanced()) {
+      System.out.println("ERROR: RE-SORTED BOOKSHELF SHOULD HAVE THE NEW SORTLIST AND BALANCING");
+      return false;
+    }
+    
+    // ensures the original is unchanged and both can change independently
+    bookshelf.insertBook(new Book("Title 20000", 1, "Author0", "F"));
+    if(bookshelf.size() != 20001 || byPages.size() != 20000 
+        || !Arrays.equals(bookshelf.getSortList(), a)) {
+      System.out.println("ERROR: RE-SORTING SHOULD NOT CHANGE THE ORIGINAL BOOKSHELF");
+      return false;
+    }
+    if(!byPages.removeBook(expected.get(0)) || !bookshelf.contains(expected.get(0))) {
+      System.out.println("ERROR: A RE-SORTED BOOKSHELF SHOULD CHANGE WITHOUT THE ORIGINAL");
+      return false;
+    }
+    
+    // ensures author lookups come back in the new order
+    List<Book> author = byPages.getBooksByAuthor("Author3, F");
+    for(int i = 1; i < author.size(); ++i) {
+      if(author.get(i - 1).getPageCount() >= author.get(i).getPageCount()) {
+        System.out.println("ERROR: RE-SORTED AUTHOR BOOKS SHOULD BE IN PAGE COUNT ORDER");
+        return false;
+      }
+    }
+    if(author.size() != 2000) {
+      System.out.println("ERROR: Author3 SHOULD HAVE 2000 BOOKS BUT HAS " + author.size());
+      return false;
+    }
+    
+    // ensures re-sorting by the same sortList keeps the order, and an invalid one throws
+    if(!bookshelf.sortedBy(a).toString().equals(bookshelf.toString())) {
+      System.out.println("ERROR: RE-SORTING BY THE SAME SORTLIST SHOULD KEEP THE ORDER");
+      return false;
+    }
+    try {
+      bookshelf.sortedBy(c);
+      System.out.println("ERROR: RE-SORTING BY AN INVALID SORTLIST SHOULD THROW");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests filter() and parallelForEach() on a small bookshelf scanned on one thread and on a large
+   * plain one whose scan is split across threads
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testFilter() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates an empty bookshelf, a small balanced one and a large plain one
+    BinaryBookshelf empty = new BinaryBookshelf(a);
+    BinaryBookshelf small = new BinaryBookshelf(a, true);
+    BinaryBookshelf large = new BinaryBookshelf(a);
+    
+    // ensures an empty bookshelf gives nothing
+    if(!empty.filter(book -> true).isEmpty()) {
+      System.out.println("ERROR: FILTERING AN EMPTY BOOKSHELF SHOULD GIVE NO BOOKS");
+      return false;
+    }
+    
+    // shelves 100 books on the small bookshelf and 50000 shuffled ones on the large one
+    for(int i = 0; i < 100; ++i)
+      small.insertBook(new Book(String.format("Title %03d", i), i + 1, "Author", "F"));
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 50000; ++i)
+      books.add(new Book(String.format("Title %05d", i), i % 997 + 1, "Author" + (i % 7), "F"));
+    Collections.shuffle(books, new Random(23));
+    large.insertBooks(books);
+    
+    // ensures each filter matches exactly what a sequential stream does, in the same order
+    List<Predicate<Book>> filters = new ArrayList<Predicate<Book>>();
+    filters.add(book -> book.getPageCount() > 990);
+    filters.add(book -> book.getTitle().contains("7"));
+    filters.add(book -> true);
+    filters.add(book -> false);
+    for(BinaryBookshelf bookshelf : new BinaryBookshelf[] {small, large}) {
+      for(Predicate<Book> filter : filters) {
+        List<Book> expected = bookshelf.stream().filter(filter).collect(Collectors.toList());
+        List<Book> actual = bookshelf.filter(filter);
+        if(!actual.equals(expected)) {
+          System.out.println("ERROR: FILTER SHOULD GIVE " + expected.size() + " BOOKS IN ORDER " 
+              + "BUT GAVE " + actual.size());
+          return false;
+        }
+      }
+    }
+    
+    // ensures parallelForEach gives every book exactly once
+    Set<Book> seen = Collections.newSetFromMap(new ConcurrentHashMap<Book, Boolean>());
+    AtomicInteger calls = new AtomicInteger();
+    large.parallelForEach(book -> {
+      seen.add(book);
+      calls.incrementAndGet();
+    });
+    if(calls.get() != 50000 || seen.size() != 50000 || !seen.containsAll(books)) {
+      System.out.println("ERROR: parallelForEach SHOULD GIVE EACH OF 50000 BOOKS ONCE BUT MADE " 
+          + calls.get() + " CALLS");
+      return false;
+    }
+    
+    // ensures a plain bookshelf that is one long path, and a balanced one built the same way, are
+    // scanned completely and in order, and give every book to parallelForEach once
+    BinaryBookshelf skewed = new BinaryBookshelf(a);
+    BinaryBookshelf sortedBalanced = new BinaryBookshelf(a, true);
+    for(int i = 0; i < 20000; ++i) {
+      Book book = new Book(String.format("Skewed %05d", i), i % 997 + 1, "Author", "F");
+      skewed.insertBook(book);
+      sortedBalanced.insertBook(book);
+    }
+    for(BinaryBookshelf bookshelf : new BinaryBookshelf[] {skewed, sortedBalanced}) {
+      List<Book> expected = bookshelf.stream().filter(filters.get(1)).collect(Collectors.toList());
+      AtomicInteger visits = new AtomicInteger();
+      bookshelf.parallelForEach(book -> visits.incrementAndGet());
+      if(!bookshelf.filter(filters.get(1)).equals(expected) || visits.get() != 20000) {
+        System.out.println("ERROR: A BOOKSHELF BUILT FROM SORTED INSERTS SHOULD SCAN WHOLE");
+        return false;
+      }
+    }
+    
+    // ensures an exception thrown by the filter reaches the caller
+    try {
+      large.filter(book -> {
+        if(book.getPageCount() == 500)
+          throw new IllegalStateException("filter failed");
+        return true;
+      });
+      System.out.println("ERROR: AN EXCEPTION IN THE FILTER SHOULD REACH THE CALLER");
+      return false;
+    } catch(IllegalStateException ise) {
+      // expected
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests forEachByAuthor(), forEachByPageCount() and forEachByTitlePrefix() by giving their books
+   * to counting and collecting sinks and checking them against the ArrayList queries
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testQuerySinks() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates an empty bookshelf and a balanced one
+    BinaryBookshelf empty = new BinaryBookshelf(a);
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // ensures an empty bookshelf never calls the sink
+    AtomicInteger calls = new AtomicInteger();
+    empty.forEachByAuthor("Author0, F", book -> calls.incrementAndGet());
+    empty.forEachByPageCount(1, 1000, book -> calls.incrementAndGet());
+    empty.forEachByTitlePrefix("", book -> calls.incrementAndGet());
+    if(calls.get() != 0) {
+      System.out.println("ERROR: AN EMPTY BOOKSHELF SHOULD NEVER CALL THE SINK");
+      return false;
+    }
+    
+    // shelves 3000 shuffled books by 6 authors
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 3000; ++i)
+      books.add(new Book(String.format("Title %04d", i), i % 300 + 1, "Author" + (i % 6), "F"));
+    Collections.shuffle(books, new Random(24));
+    bookshelf.insertBooks(books);
+    
+    // ensures each author's books reach the sink in the same order getBooksByAuthor lists them
+    for(int i = 0; i < 7; ++i) {
+      String author = "Author" + i + ", F";
+      List<Book> expected = bookshelf.getBooksByAuthor(author);
+      List<Book> given = new ArrayList<Book>(500);
+      bookshelf.forEachByAuthor(author, given::add);
+      if(!given.equals(expected) || expected.size() != (i < 6 ? 500 : 0)) {
+        System.out.println("ERROR: " + author + " SHOULD HAVE " + (i < 6 ? 500 : 0) 
+            + " BOOKS GIVEN IN ORDER BUT HAD " + given.size());
+        return false;
+      }
+      for(Book book : given) {
+        if(!book.getAuthor().equals(author)) {
+          System.out.println("ERROR: " + book + " IS NOT BY " + author);
+          return false;
+        }
+      }
+    }
+    
+    // ensures a counting sink sees the same books as the page count and title prefix queries
+    calls.set(0);
+    bookshelf.forEachByPageCount(10, 19, book -> calls.incrementAndGet());
+    if(calls.get() != 100 || bookshelf.getBooksByPageCount(10, 19).size() != 100) {
+      System.out.println("ERROR: PAGE COUNTS 10 TO 19 SHOULD GIVE 100 BOOKS BUT GAVE " 
+          + calls.get());
+      return false;
+    }
+    List<Book> given = new ArrayList<Book>();
+    bookshelf.forEachByTitlePrefix("Title 12", given::add);
+    if(given.size() != 100 || !given.equals(bookshelf.getBooksByTitlePrefix("Title 12"))) {
+      System.out.println("ERROR: PREFIX Title 12 SHOULD GIVE 100 BOOKS IN ORDER BUT GAVE " 
+          + given.size());
+      return false;
+    }
+    
+    // ensures an empty page count range never calls the sink
+    calls.set(0);
+    bookshelf.forEachByPageCount(20, 10, book -> calls.incrementAndGet());
+    if(calls.get() != 0) {
+      System.out.println("ERROR: AN EMPTY PAGE COUNT RANGE SHOULD NEVER CALL THE SINK");
+      return false;
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
+  
+  /**
+   * Tests getPage() and getBooksByAuthorPage() by paging through whole listings, changing the
+   * bookshelf between pages, and passing bad cursors and page sizes
+   * 
+   * @return true if all tests pass, false otherwise
+   */
+  public static boolean testPagination() {
+    // creates a valid Attribute array
+    Attribute[] a = {Attribute.AUTHOR, Attribute.TITLE, Attribute.PAGECOUNT, Attribute.ID};
+    // creates an empty bookshelf and a balanced one
+    BinaryBookshelf empty = new BinaryBookshelf(a);
+    BinaryBookshelf bookshelf = new BinaryBookshelf(a, true);
+    
+    // ensures an empty bookshelf has one empty last page
+    BookPage page = empty.getPage(null, 10);
+    if(!page.getBooks().isEmpty() || page.hasNext() || page.getNextCursor() != null) {
+      System.out.println("ERROR: AN EMPTY BOOKSHELF SHOULD HAVE ONE EMPTY LAST PAGE");
+      return false;
+    }
+    
+    // shelves 1000 shuffled books by 10 authors
+    List<Book> books = new ArrayList<Book>();
+    for(int i = 0; i < 1000; ++i)
+      books.add(new Book(String.format("Title %04d", i), i % 50 + 1, "Author" + (i % 10), "F"));
+    Collections.shuffle(books, new Random(25));
+    bookshelf.insertBooks(books);
+    
+    // ensures 20 pages of 50 hold the whole bookshelf in order, with no cursor after the last
+    List<Book> paged = new ArrayList<Book>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      page = bookshelf.getPage(cursor, 50);
+      if(page.getBooks().size() != 50) {
+        System.out.println("ERROR: EVERY PAGE SHOULD HOLD 50 BOOKS BUT ONE HOLDS " 
+            + page.getBooks().size());
+        return false;
+      }
+      paged.addAll(page.getBooks());
+      cursor = page.getNextCursor();
+      pages++;
+    } while(page.hasNext());
+    if(pages != 20 || !paged.equals(bookshelf.stream().collect(Collectors.toList()))) {
+      System.out.println("ERROR: 20 PAGES SHOULD HOLD THE BOOKSHELF IN ORDER BUT " + pages 
+          + " PAGES HOLD " + paged.size() + " BOOKS");
+      return false;
+    }
+    
+    // ensures an author's 100 books come in pages of 30, 30, 30 and 10
+    List<Book> author = bookshelf.getBooksByAuthor("Author4, F");
+    paged.clear();
+    cursor = null;
+    int[] sizes = {30, 30, 30, 10};
+    for(int i = 0; i < sizes.length; ++i) {
+      page = bookshelf.getBooksByAuthorPage("Author4, F", cursor, 30);
+      if(page.getBooks().size() != sizes[i] || page.hasNext() != (i < sizes.length - 1)) {
+        System.out.println("ERROR: AUTHOR PAGE " + i + " SHOULD HOLD " + sizes[i] 
+            + " BOOKS BUT HOLDS " + page.getBooks().size());
+        return false;
+      }
+      paged.addAll(page.getBooks());
+      cursor = page.getNextCursor();
+    }
+    if(!paged.equals(author)) {
+      System.out.println("ERROR: AUTHOR PAGES SHOULD HOLD THE AUTHOR'S BOOKS IN ORDER");
+      return false;
+    }
+    
+    // removes the last book of a page and adds one before it, then ensures the next page still
+    // starts right after it
+    page = bookshelf.getBooksByAuthorPage("Author4, F", null, 30);
+    Book last = page.getBooks().get(29);
+    bookshelf.removeBook(last);
+    bookshelf.insertBook(new Book("Title 0000", 1, "Author4", "F"));
+    page = bookshelf.getBooksByAuthorPage("Author4, F", page.getNextCursor(), 30);
+    if(page.getBooks().get(0) != author.get(30)) {
+      System.out.println("ERROR: NEXT PAGE SHOULD START WITH " + author.get(30) + " BUT STARTS " 
+          + "WITH " + page.getBooks().get(0));
+      return false;
+    }
+    
+    // ensures bad page sizes and cursors throw
+    String[] badCursors = {"not a cursor!", "AAAA", page.getNextCursor().substring(0, 10)};
+    for(String badCursor : badCursors) {
+      try {
+        bookshelf.getPage(badCursor, 10);
+        System.out.println("ERROR: CURSOR " + badCursor + " SHOULD BE REJECTED");
+        return false;
+      } catch(IllegalArgumentException iae) {
+        // expected
+      }
+    }
+    try {
+      bookshelf.getPage(null, 0);
+      System.out.println("ERROR: A PAGE SIZE OF 0 SHOULD BE REJECTED");
+      return false;
+    } catch(IllegalArgumentException iae) {
+      // expected
+    }
+    
+    // resets Books IDGenerator
+    Book.resetGenerator();
+    
+    return true;
+  }
 }
@@ -1,3 +1,6 @@
+// imports
+import java.io.IOException;
+
 /**
  * An instantiable class representing information about a Book
  *
@@ -5,11 +8,12 @@
 public class Book {
 
     // data
-    private static int idGenerator = 0;
-    private String authorLastname;
-    private String authorFirstname;
-    private String title;
-    private int pageCount;
+    private static final BookIdAllocator idGenerator = new BookIdAllocator(); // default IDs
+    private final String authorLastname;
+    private final String authorFirstname;
+    private final String author; // "Lastname, Firstname", built once since every comparison uses it
+    private final String title;
+    private final int pageCount;
     
     /**
      * The ID value for this Book.
@@ -22,14 +26,18 @@ public class Book {
      * @param pageCount the number of pages in the Book
      */
     public Book(String title, int pageCount) {
-      if (pageCount <= 0) throw new IllegalArgumentException("Invalid page count");
-      this.title = title;
-      this.pageCount = pageCount;
-      this.ID = idGenerator++;
-      
       // set defaults for an anonymous book
-      this.authorFirstname = "";
-      this.authorLastname = "";
+      this(title, pageCount, "", "");
+    }
+    
+    /**
+     * A constructor for a Book with no recorded author, numbered by the given allocator
+     * @param title the title of the Book
+     * @param pageCount the number of pages in the Book
+     * @param ids the allocator to take this Book's ID from
+     */
+    public Book(String title, int pageCount, BookIdAllocator ids) {
+      this(title, pageCount, "", "", ids);
     }
     
     /**
@@ -40,9 +48,45 @@ public class Book {
      * @param first the author's first name
      */
     public Book(String title, int pageCount, String last, String first) {
-      this(title, pageCount);
+      this(title, pageCount, last, first, idGenerator);
+    }
+    
+    /**
+     * A constructor for a Book with an author, numbered by the given allocator. Books can be built
+     * on many threads at once this way, and each allocator numbers its books independently.
+     * @param title the title of the Book
+     * @param pageCount the number of pages in the Book
+     * @param last the author's last name
+     * @param first the author's first name
+     * @param ids the allocator to take this Book's ID from
+     */
+    public Book(String title, int pageCount, String last, String first, BookIdAllocator ids) {
+      if (pageCount <= 0) throw new IllegalArgumentException("Invalid page count");
+      this.title = title;
+      this.pageCount = pageCount;
+      this.ID = ids.nextId();
+      this.authorFirstname = first;
+      this.authorLastname = last;
+      this.author = last+", "+first;
+    }
+    
+    /**
+     * A constructor that restores a saved Book with the ID it already had, without taking a new ID
+     * from any allocator
+     * @param id the ID the Book was saved with
+     * @param title the title of the Book
+     * @param pageCount the number of pages in the Book
+     * @param last the author's last name
+     * @param first the author's first name
+     */
+    Book(int id, String title, int pageCount, String last, String first) {
+      if (pageCount <= 0) throw new IllegalArgumentException("Invalid page count");
+      this.title = title;
+      this.pageCount = pageCount;
+      this.ID = id;
       this.authorFirstname = first;
       this.authorLastname = last;
+      this.author = last+", "+first;
     }
     
     /**
@@ -50,7 +94,23 @@ public class Book {
      * @return the author of this Book, as "Lastname, Firstname"
      */
     public String getAuthor() {
-      return authorLastname+", "+authorFirstname;
+      return this.author;
+    }
+    
+    /**
+     * Accessor for the author's last name
+     * @return the last name of the author of this Book
+     */
+    public String getAuthorLastname() {
+      return this.authorLastname;
+    }
+    
+    /**
+     * Accessor for the author's first name
+     * @return the first name of the author of this Book
+     */
+    public String getAuthorFirstname() {
+      return this.authorFirstname;
     }
     
     /**
@@ -83,27 +143,92 @@ public class Book {
         case TITLE:
           return this.title.compareTo(otherBook.title);
         case AUTHOR:
-          return this.getAuthor().compareTo(otherBook.getAuthor());
+          return this.author.compareTo(otherBook.author);
         case PAGECOUNT:
           return this.pageCount-otherBook.pageCount;
         default: return 0;
       }
     }
     
+    /**
+     * Compares the author of this Book to the author of otherBook, using the cached author keys
+     * @param otherBook the Book to compare this one to
+     * @return the same value as compareTo(otherBook, Attribute.AUTHOR)
+     */
+    public int compareAuthor(Book otherBook) {
+      return this.author.compareTo(otherBook.author);
+    }
+    
+    /**
+     * Compares the author of this Book to an author given as separate names, without building the
+     * "Lastname, Firstname" String for them. The names are compared as if they were joined, so the
+     * result orders books exactly like getAuthor().compareTo(last+", "+first).
+     * @param last the other author's last name
+     * @param first the other author's first name
+     * @return negative if this Book's author sorts first, positive if it sorts after, 0 if equal
+     */
+    public int compareAuthorTo(String last, String first) {
+      int otherLength = last.length() + 2 + first.length();
+      int limit = Math.min(author.length(), otherLength);
+      
+      // walks the cached key against last, then the ", " separator, then first
+      for (int i = 0; i < limit; i++) {
+        char other;
+        if (i < last.length()) other = last.charAt(i);
+        else if (i == last.length()) other = ',';
+        else if (i == last.length() + 1) other = ' ';
+        else other = first.charAt(i - last.length() - 2);
+        
+        char mine = author.charAt(i);
+        if (mine != other) return mine - other;
+      }
+      return author.length() - otherLength;
+    }
+    
     /**
      * Constructs a String representation of this Book's data for printing
      * @return the String representation of this Book
      */
     public String toString() {
-      return this.ID+": \""+this.title+"\", "+this.getAuthor()+" ("+this.pageCount+")";
+      StringBuilder builder = new StringBuilder();
+      appendTo(builder);
+      return builder.toString();
+    }
+    
+    /**
+     * Appends the same text as toString() to out, without building the whole String first
+     * @param out the Appendable to write this Book's data to
+     * @throws IOException if out can't be written to
+     */
+    public void appendTo(Appendable out) throws IOException {
+      out.append(Integer.toString(this.ID)).append(": \"").append(this.title).append("\", ")
+          .append(this.author).append(" (").append(Integer.toString(this.pageCount)).append(')');
+    }
+    
+    /**
+     * Appends the same text as toString() to a StringBuilder, which can't throw an IOException
+     * @param out the StringBuilder to write this Book's data to
+     */
+    public void appendTo(StringBuilder out) {
+      out.append(this.ID).append(": \"").append(this.title).append("\", ")
+          .append(this.author).append(" (").append(this.pageCount).append(')');
     }
     
     /**
      * Resets the ID generator for testing purposes. Call this method at the beginning of every
-     * test method you write to assure that all Book ID numbers begin from 0 again.
+     * test method you write to assure that all Book ID numbers begin from 0 again. Only Books
+     * created without their own BookIdAllocator are affected.
      */
     public static void resetGenerator() {
-      idGenerator = 0;
+      idGenerator.reset();
+    }
+    
+    /**
+     * Gets the allocator that numbers Books created without their own BookIdAllocator
+     * @return the default allocator
+     */
+    static BookIdAllocator defaultAllocator() {
+      return idGenerator;
     }
     
     /**
@@ -115,15 +240,10 @@ public class Book {
     @Override
     public boolean equals(Object o) {
       if(o instanceof Book) {
-        if(this.compareTo((Book)o, Attribute.AUTHOR) == 0) {
-          if(this.compareTo((Book)o, Attribute.PAGECOUNT) == 0) {
-            if(this.compareTo((Book)o, Attribute.ID) == 0) {
-              if(this.compareTo((Book)o, Attribute.TITLE) == 0) {
-                return true;
-              }
-            }
-          }    
-        }
+        Book other = (Book)o;
+        // cheapest checks first, the cached author key is only compared when the numbers match
+        return this.ID == other.ID && this.pageCount == other.pageCount
+            && this.author.equals(other.author) && this.title.equals(other.title);
       }
       
       return false;
@@ -0,0 +1,107 @@
+// imports
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class hands out unique Book ID numbers, safely from any number of threads. Each thread
+ * claims a block of consecutive IDs from a shared counter and then numbers its books from that
+ * block without touching the counter, so threads almost never contend. IDs from one thread always
+ * increase, but IDs from different threads interleave by block rather than by creation time.
+ *
+ * Each allocator is its own sequence, so separate bookshelves or tenants can number their books
+ * independently. Books created without an allocator share one default allocator.
+ */
+public class BookIdAllocator {
+  // fields
+  private static final int DEFAULT_BLOCK_SIZE = 1024; // IDs claimed by a thread at a time
+  private AtomicLong nextBlock; // first ID of the next unclaimed block
+  private int blockSize; // number of IDs in each block
+  private volatile int generation; // changes on every reset, making every claimed block stale
+  private volatile int reserved; // highest ID that must not be handed out, -1 if none
+  private ThreadLocal<Block> blocks; // the block each thread is currently numbering from
+
+  // constructors
+  /**
+   * No arg constructor to create new BookIdAllocator starting from 0
+   */
+  public BookIdAllocator() {
+    this(DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Single arg constructor to create new BookIdAllocator starting from 0
+   *
+   * @param blockSize int the number of IDs each thread claims at a time, 1 for strictly
+   *                  increasing IDs across all threads
+   * @throws          IllegalArgumentException if blockSize is not positive
+   */
+  public BookIdAllocator(int blockSize) {
+    if(blockSize <= 0)
+      throw new IllegalArgumentException("blockSize must be positive");
+
+    this.nextBlock = new AtomicLong(0);
+    this.blockSize = blockSize;
+    this.generation = 0;
+    this.reserved = -1;
+    this.blocks = ThreadLocal.withInitial(Block::new);
+  }
+
+  // mutators
+  /**
+   * Returns the next ID for the calling thread
+   *
+   * @throws IllegalStateException if every int ID has been handed out
+   * @return an ID that this allocator has not returned since it was last reset
+   */
+  public int nextId() {
+    Block block = blocks.get();
+
+    // claims a fresh block when this thread used up its block, it was claimed before a reset, or
+    // it is below IDs that were reserved since
+    while(block.next == block.end || block.generation != generation || block.next <= reserved) {
+      int current = generation;
+      long start = nextBlock.getAndAdd(blockSize);
+      if(start > Integer.MAX_VALUE)
+        throw new IllegalStateException("Ran out of Book IDs");
+
+      block.next = (int) start;
+      block.end = (int) Math.min(start + blockSize - 1, Integer.MAX_VALUE) + 1;
+      block.generation = current;
+    }
+
+    return block.next++;
+  }
+
+  /**
+   * Makes sure no ID up to and including maxId is handed out after this returns, for books that
+   * were restored with IDs they were saved with. IDs below maxId that were never handed out are
+   * skipped for good.
+   *
+   * @param maxId int the highest ID already in use
+   */
+  public synchronized void reserveThrough(int maxId) {
+    if(maxId <= reserved)
+      return;
+
+    nextBlock.accumulateAndGet(maxId + 1L, Math::max);
+    reserved = maxId;
+  }
+
+  /**
+   * Starts numbering from 0 again. Must not be called while any thread is creating books with
+   * this allocator.
+   */
+  public synchronized void reset() {
+    nextBlock.set(0);
+    reserved = -1;
+    generation++;
+  }
+
+  /**
+   * This class holds the part of a block that one thread has not used yet
+   */
+  private static class Block {
+    private int next; // next ID to hand out
+    private int end; // ID just past the block, which may wrap to Integer.MIN_VALUE at the top
+    private int generation = -1; // generation the block was claimed in, -1 before the first claim
+  }
+}
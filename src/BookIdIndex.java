@@ -0,0 +1,167 @@
+/**
+ * This class finds books by ID in O(1) with an open addressing hash table of Books, probed by the
+ * int ID itself so no key is ever boxed. The ID is read back out of each Book, so the table needs
+ * no key array at all.
+ *
+ * One thread may add and remove books while others look them up without locking: a slot only
+ * ever goes from empty to holding a Book, and from a Book to a tombstone that keeps probe runs
+ * intact, Book's fields are final, and a rebuilt table is built aside and swapped in with one
+ * volatile write. A reader sees every change made before it started, and maybe later ones.
+ */
+class BookIdIndex {
+  // fields
+  private static final int MIN_CAPACITY = 16; // slots in the smallest table
+  private static final Book TOMBSTONE = new Book(0, "", 1, "", ""); // marks a removed book's slot
+  private volatile Book[] table; // the slots, a power of two of them, null where empty
+  private int count; // books in the table
+  private int used; // slots holding a book or a tombstone
+
+  // constructors
+  /**
+   * Single arg constructor to create a BookIdIndex with room for some books before it grows
+   *
+   * @param expected int the number of books expected
+   */
+  BookIdIndex(int expected) {
+    int capacity = MIN_CAPACITY;
+    while(capacity < (1 << 30) && capacity * 3L < expected * 4L)
+      capacity *= 2;
+
+    this.table = new Book[capacity];
+    this.count = 0;
+    this.used = 0;
+  }
+
+  // mutators
+  /**
+   * Adds a book, rebuilding the table first if books and tombstones fill three quarters of it.
+   * Books with the same ID are all kept, and lookups find the first of them that was added.
+   *
+   * @param book Book to add
+   */
+  void add(Book book) {
+    Book[] slots = table;
+    if((used + 1) * 4L > slots.length * 3L) {
+      slots = rebuild(slots, count + 1);
+      table = slots;
+      used = count;
+    }
+
+    place(slots, book);
+    count += 1;
+    used += 1;
+  }
+
+  /**
+   * Removes a book, leaving a tombstone in its slot so later books in the same probe run are
+   * still found
+   *
+   * @param book Book to remove, the same object that was added
+   * @return     true if the book was in the table, false otherwise
+   */
+  boolean remove(Book book) {
+    Book[] slots = table;
+    int mask = slots.length - 1;
+
+    for(int i = slot(book.ID, mask); slots[i] != null; i = (i + 1) & mask) {
+      if(slots[i] == book) {
+        slots[i] = TOMBSTONE;
+        count -= 1;
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  // accessors
+  /**
+   * Finds a book by ID
+   *
+   * Complexity = O(1) expected
+   *
+   * @param id int the ID to look for
+   * @return   the first book added with that ID, null if there is none
+   */
+  Book get(int id) {
+    Book[] slots = table;
+    int mask = slots.length - 1;
+
+    for(int i = slot(id, mask); ; i = (i + 1) & mask) {
+      Book book = slots[i];
+      if(book == null)
+        return null;
+      if(book.ID == id && book != TOMBSTONE)
+        return book;
+    }
+  }
+
+  /**
+   * Returns how many books are in the table
+   *
+   * @return this.count the number of books
+   */
+  int size() {
+    return this.count;
+  }
+
+  // helpers
+  /**
+   * Copies every book, but no tombstone, into a table at most half full once it holds a number of
+   * books. Books keep their old probe order, so the first book added with an ID stays the first
+   * one found.
+   *
+   * @param slots Book[] the full table
+   * @param books int the number of books the new table must have room for
+   * @throws      IllegalStateException if that many books can't be indexed
+   * @return      the new table
+   */
+  private static Book[] rebuild(Book[] slots, int books) {
+    int capacity = MIN_CAPACITY;
+    while(capacity < books * 2L) {
+      if(capacity == (1 << 30))
+        throw new IllegalStateException("Too many books to index by ID");
+      capacity *= 2;
+    }
+
+    Book[] rebuilt = new Book[capacity];
+    int mask = slots.length - 1;
+
+    // starts just after an empty slot, so no probe run wraps around past the start
+    int start = 0;
+    while(slots[start] != null)
+      start++;
+    for(int i = 1; i <= slots.length; ++i) {
+      Book book = slots[(start + i) & mask];
+      if(book != null && book != TOMBSTONE)
+        place(rebuilt, book);
+    }
+
+    return rebuilt;
+  }
+
+  /**
+   * Puts a book in the first empty slot of its probe sequence
+   *
+   * @param slots Book[] a table with at least one empty slot
+   * @param book  Book to put
+   */
+  private static void place(Book[] slots, Book book) {
+    int mask = slots.length - 1;
+    int i = slot(book.ID, mask);
+    while(slots[i] != null)
+      i = (i + 1) & mask;
+    slots[i] = book;
+  }
+
+  /**
+   * Gets the home slot of an ID by Fibonacci hashing, which spreads sequential IDs evenly
+   *
+   * @param id   int an ID
+   * @param mask int one less than the number of slots
+   * @return     the first slot to probe
+   */
+  private static int slot(int id, int mask) {
+    return (id * 0x9E3779B9) >>> (32 - Integer.bitCount(mask)) & mask;
+  }
+}
@@ -0,0 +1,54 @@
+// imports
+import java.util.ArrayList;
+
+/**
+ * This class holds one page of books from a bookshelf listing, along with the cursor that picks
+ * the listing up right after the page's last book. A cursor is an opaque String holding that
+ * book's sort key rather than a position, so it stays valid while the bookshelf changes: the next
+ * page starts at the first book still on the shelf that sorts after it.
+ */
+public class BookPage {
+  // fields
+  private ArrayList<Book> books; // the books on this page, in shelf order
+  private String nextCursor; // cursor for the next page, null if this is the last one
+
+  // constructors
+  /**
+   * Two arg constructor to create new BookPage
+   *
+   * @param books      ArrayList<Book> the books on the page, in shelf order
+   * @param nextCursor String the cursor for the next page, null if there are no more books
+   */
+  BookPage(ArrayList<Book> books, String nextCursor) {
+    this.books = books;
+    this.nextCursor = nextCursor;
+  }
+
+  // accessors
+  /**
+   * Gets the books on this page
+   *
+   * @return this.books an ArrayList of at most the page size books, in shelf order
+   */
+  public ArrayList<Book> getBooks() {
+    return this.books;
+  }
+
+  /**
+   * Gets the cursor to pass back for the next page
+   *
+   * @return this.nextCursor an opaque String, null if this is the last page
+   */
+  public String getNextCursor() {
+    return this.nextCursor;
+  }
+
+  /**
+   * Checks whether there are more books after this page
+   *
+   * @return true if getNextCursor() gives a cursor, false if this is the last page
+   */
+  public boolean hasNext() {
+    return this.nextCursor != null;
+  }
+}
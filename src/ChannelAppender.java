@@ -0,0 +1,142 @@
+// imports
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is an Appendable that encodes text as UTF-8 into a WritableByteChannel through two
+ * fixed size buffers, so any amount of text can be written while holding only a few KB of it
+ */
+class ChannelAppender implements Appendable {
+  // fields
+  private static final int BUFFER_SIZE = 8192; // chars buffered before they are encoded
+  private WritableByteChannel channel; // where the encoded bytes go
+  private CharsetEncoder encoder; // UTF-8, replacing anything it can't encode like String does
+  private CharBuffer chars; // text waiting to be encoded
+  private ByteBuffer bytes; // encoded bytes waiting to be written
+
+  // constructors
+  /**
+   * Single arg constructor to create a new ChannelAppender
+   *
+   * @param channel WritableByteChannel to write the encoded text to
+   */
+  public ChannelAppender(WritableByteChannel channel) {
+    this.channel = channel;
+    this.encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.chars = CharBuffer.allocate(BUFFER_SIZE);
+    this.bytes = ByteBuffer.allocate(BUFFER_SIZE * 3);
+  }
+
+  // mutators
+  /**
+   * Appends a sequence of chars, encoding and writing whenever the buffer fills up
+   *
+   * @param csq CharSequence to append, "null" if null
+   * @throws    IOException if the channel can't be written to
+   * @return    this ChannelAppender
+   */
+  @Override
+  public Appendable append(CharSequence csq) throws IOException {
+    if(csq == null)
+      csq = "null";
+
+    return append(csq, 0, csq.length());
+  }
+
+  /**
+   * Appends part of a sequence of chars, encoding and writing whenever the buffer fills up
+   *
+   * @param csq   CharSequence to append from, "null" if null
+   * @param start int the index of the first char to append
+   * @param end   int the index just past the last char to append
+   * @throws      IOException if the channel can't be written to
+   * @return      this ChannelAppender
+   */
+  @Override
+  public Appendable append(CharSequence csq, int start, int end) throws IOException {
+    if(csq == null)
+      csq = "null";
+
+    while(start < end) {
+      int count = Math.min(end - start, chars.remaining());
+      chars.append(csq, start, start + count);
+      start += count;
+
+      if(!chars.hasRemaining())
+        encode(false);
+    }
+    return this;
+  }
+
+  /**
+   * Appends a single char, encoding and writing if the buffer fills up
+   *
+   * @param c char to append
+   * @throws  IOException if the channel can't be written to
+   * @return  this ChannelAppender
+   */
+  @Override
+  public Appendable append(char c) throws IOException {
+    chars.put(c);
+
+    if(!chars.hasRemaining())
+      encode(false);
+    return this;
+  }
+
+  /**
+   * Encodes and writes everything still buffered. The channel is left open.
+   *
+   * @throws IOException if the channel can't be written to
+   */
+  public void finish() throws IOException {
+    encode(true);
+    encoder.flush(bytes);
+    write();
+    encoder.reset();
+  }
+
+  // helpers
+  /**
+   * Encodes the buffered chars, writing the bytes out each time the byte buffer fills up. A high
+   * surrogate at the end is kept for the next call unless this is the end of the input.
+   *
+   * @param endOfInput boolean true if no more chars will be appended
+   * @throws           IOException if the channel can't be written to
+   */
+  private void encode(boolean endOfInput) throws IOException {
+    chars.flip();
+
+    while(true) {
+      CoderResult result = encoder.encode(chars, bytes, endOfInput);
+      write();
+
+      if(result.isUnderflow())
+        break;
+    }
+
+    chars.compact();
+  }
+
+  /**
+   * Writes every encoded byte to the channel
+   *
+   * @throws IOException if the channel can't be written to
+   */
+  private void write() throws IOException {
+    bytes.flip();
+
+    while(bytes.hasRemaining())
+      channel.write(bytes);
+
+    bytes.clear();
+  }
+}
@@ -0,0 +1,318 @@
+// imports
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class creates a BinaryBookshelf that many threads can use at once. Readers never lock or
+ * wait: every insert copies the nodes it changes instead of changing them in place, then publishes
+ * the new root in one volatile write. A reader keeps using whichever tree it started with, so
+ * contains, getBooksByAuthor, size and iteration all run while writers insert. Writers take turns
+ * behind a single lock.
+ */
+public class ConcurrentBinaryBookshelf extends BinaryBookshelf {
+  // fields
+  private volatile Published published; // the latest tree readers may see, with its size
+  private ReentrantLock writeLock; // held by the one thread allowed to change the bookshelf
+
+  // constructors
+  /**
+   * Single arg constructor to create new, balanced ConcurrentBinaryBookshelf
+   *
+   * @param sortList an array of Attributes that will determine how books will be sorted
+   */
+  public ConcurrentBinaryBookshelf(Attribute[] sortList) {
+    this(sortList, true);
+  }
+
+  /**
+   * Two arg constructor to create new ConcurrentBinaryBookshelf
+   *
+   * @param sortList an array of Attributes that will determine how books will be sorted
+   * @param balanced true to keep the bookshelf height balanced, false for a plain BST
+   */
+  public ConcurrentBinaryBookshelf(Attribute[] sortList, boolean balanced) {
+    super(sortList, balanced);
+    this.writeLock = new ReentrantLock();
+    this.published = new Published(null, 0, null, null);
+    // nothing in the bookshelf may change in place once readers can see it
+    freeze();
+  }
+
+  // mutators
+  /**
+   * Clears the ConcurrentBinaryBookshelf. Readers already walking the old tree finish walking it.
+   */
+  @Override
+  public void clear() {
+    writeLock.lock();
+    try {
+      super.clear();
+      publish();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Inserts a book into the ConcurrentBinaryBookshelf
+   *
+   * @param book a Book object to be added
+   * @throws     IllegalArgumentException if the book is already in the bookshelf
+   */
+  @Override
+  public void insertBook(Book book) {
+    writeLock.lock();
+    try {
+      super.insertBook(book);
+      publish();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Inserts a whole batch of books at once, see BinaryBookshelf.insertBooks(Collection). Readers
+   * see either none or all of the batch.
+   *
+   * @param books a Collection of Book objects to be added
+   * @throws      IllegalArgumentException if a book is in the batch twice or already shelved
+   */
+  @Override
+  public void insertBooks(Collection<? extends Book> books) {
+    writeLock.lock();
+    try {
+      super.insertBooks(books);
+      publish();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Inserts a whole batch of books at once, see BinaryBookshelf.insertBooks(Book[]). Readers see
+   * either none or all of the batch.
+   *
+   * @param books an array of Book objects to be added
+   * @throws      IllegalArgumentException if a book is in the batch twice or already shelved
+   */
+  @Override
+  public void insertBooks(Book[] books) {
+    writeLock.lock();
+    try {
+      super.insertBooks(books);
+      publish();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Removes a book from the ConcurrentBinaryBookshelf. Readers already walking the old tree still
+   * see the book.
+   *
+   * @param book a Book object to be removed
+   * @return     true if the book was on the shelf, false otherwise
+   */
+  @Override
+  public boolean removeBook(Book book) {
+    writeLock.lock();
+    try {
+      boolean removed = super.removeBook(book);
+      if(removed)
+        publish();
+      return removed;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Removes a whole batch of books at once, see BinaryBookshelf.removeBooks(Collection). Readers
+   * see either none or all of the batch.
+   *
+   * @param books a Collection of Book objects to be removed
+   * @return      the number of books removed
+   */
+  @Override
+  public int removeBooks(Collection<? extends Book> books) {
+    writeLock.lock();
+    try {
+      int removed = super.removeBooks(books);
+      if(removed > 0)
+        publish();
+      return removed;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Makes the writer's tree the one readers see, then freezes it so later writes copy around it.
+   * Must be called while holding writeLock.
+   */
+  private void publish() {
+    BinaryBookshelf pages = peekIndex(Attribute.PAGECOUNT);
+    BinaryBookshelf titles = peekIndex(Attribute.TITLE);
+    published = new Published(super.getRoot(), super.size(),
+        pages == null ? null : pages.snapshot(), titles == null ? null : titles.snapshot());
+    freeze();
+  }
+
+  // accessors
+  /**
+   * Gets the root of the latest published tree, which will never change
+   *
+   * @return the root of this bookshelf
+   */
+  @Override
+  protected TreeNode<Book> getRoot() {
+    return this.published.root;
+  }
+
+  /**
+   * Checks whether this bookshelf is empty or not
+   *
+   * Complexity = O(1)
+   *
+   * @return true if the published tree is empty, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return this.published.root == null;
+  }
+
+  /**
+   * Returns how many books are in the bookshelf
+   *
+   * Complexity = O(1)
+   *
+   * @return an int representing how many books are in the bookshelf
+   */
+  @Override
+  public int size() {
+    return this.published.size;
+  }
+
+  /**
+   * Gets the published secondary index for an Attribute. The first time an index is needed it is
+   * built behind the write lock and published, and from then on every insert keeps it up to date.
+   *
+   * @param attribute Attribute.PAGECOUNT or Attribute.TITLE
+   * @throws          IllegalArgumentException if there is no index for attribute
+   * @return          a read-only index of the latest published books
+   */
+  @Override
+  protected BinaryBookshelf getIndex(Attribute attribute) {
+    BinaryBookshelf index = this.published.index(attribute);
+    if(index != null)
+      return index;
+
+    Published current;
+    writeLock.lock();
+    try {
+      super.getIndex(attribute);
+      publish();
+      current = this.published;
+    } finally {
+      writeLock.unlock();
+    }
+    return current.index(attribute);
+  }
+
+  /**
+   * Gets the ID index, building it behind the write lock the first time it is needed. Writers add
+   * to it as they insert and readers look up in it without locking, so getById may find a book a
+   * moment before the insert that added it has been published.
+   *
+   * @return a BookIdIndex of every book on the shelf
+   */
+  @Override
+  protected BookIdIndex getIdIndex() {
+    BookIdIndex index = peekIdIndex();
+    if(index != null)
+      return index;
+
+    writeLock.lock();
+    try {
+      return super.getIdIndex();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Takes an immutable snapshot of the latest published tree, which is already frozen
+   *
+   * Complexity = O(1)
+   *
+   * @return a read-only BinaryBookshelf holding exactly the books in this one right now
+   */
+  @Override
+  public BinaryBookshelf snapshot() {
+    Published current = this.published;
+    return new BinaryBookshelf(this, current.root, current.size, current.pageCountIndex,
+        current.titleIndex);
+  }
+
+  /**
+   * Creates an Iterator over the latest published tree. Later inserts never show up in it.
+   *
+   * @return an Iterator<Book> over the bookshelf
+   */
+  @Override
+  public Iterator<Book> iterator() {
+    Published current = this.published;
+    return new InOrderSpliterator<Book>(current.root, current.size, getComparator());
+  }
+
+  /**
+   * Creates a Spliterator over the latest published tree. Later inserts never show up in it.
+   *
+   * @return a Spliterator<Book> over the bookshelf
+   */
+  @Override
+  public Spliterator<Book> spliterator() {
+    Published current = this.published;
+    return new InOrderSpliterator<Book>(current.root, current.size, getComparator());
+  }
+
+  /**
+   * This class pairs a published root with its size and indexes, so readers always see them
+   * together
+   */
+  private static class Published {
+    private final TreeNode<Book> root; // root of a tree that will never change
+    private final int size; // number of books in that tree
+    private final BinaryBookshelf pageCountIndex; // read-only index of the tree, or null
+    private final BinaryBookshelf titleIndex; // read-only index of the tree, or null
+
+    /**
+     * Four arg constructor to create new Published
+     *
+     * @param root           TreeNode<Book> the root of a frozen tree
+     * @param size           int the number of books in the tree
+     * @param pageCountIndex a read-only page count index of the tree, or null
+     * @param titleIndex     a read-only title index of the tree, or null
+     */
+    private Published(TreeNode<Book> root, int size, BinaryBookshelf pageCountIndex,
+        BinaryBookshelf titleIndex) {
+      this.root = root;
+      this.size = size;
+      this.pageCountIndex = pageCountIndex;
+      this.titleIndex = titleIndex;
+    }
+
+    /**
+     * Gets the published index for an Attribute
+     *
+     * @param attribute an Attribute
+     * @return          the index, null if there is none
+     */
+    private BinaryBookshelf index(Attribute attribute) {
+      return attribute == Attribute.PAGECOUNT ? pageCountIndex
+          : attribute == Attribute.TITLE ? titleIndex : null;
+    }
+  }
+}
@@ -0,0 +1,8 @@
+/**
+ * This enumeration groups the names of constants representing what merging two bookshelves does
+ * with a book that is on both: keep the first bookshelf's Book object, keep the second's, or
+ * reject the merge.
+ */
+public enum DuplicatePolicy {
+    KEEP_FIRST, KEEP_SECOND, REJECT;
+  }
@@ -0,0 +1,473 @@
+// imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class keeps books in an AVL tree whose nodes are int handles instead of TreeNode objects.
+ * Subclasses decide where each handle's book and links are stored and how a book is compared to
+ * a stored one. The tree itself only ever moves ints around, so storage can be primitive arrays
+ * or off-heap buffers with no object per book.
+ *
+ * Subclasses also store the packed author prefix of every book in a primitive column next to the
+ * links. Every lookup compares that first, so a probe reads contiguous memory and only goes to
+ * the stored book itself when the first four chars of the authors tie.
+ */
+abstract class HandleTree implements Iterable<Book> {
+  // fields
+  static final int NIL = -1; // the handle of an empty subtree
+  private int root; // handle of the root, NIL when empty
+  private int size; // number of books in the tree
+  private int[] path; // reusable root-to-leaf path recorded by inserts
+  private Attribute[] sortList; // ordered array of attributes that sorts the books
+
+  // constructors
+  /**
+   * Single arg constructor to create an empty HandleTree
+   *
+   * @param sortList an array of Attributes that will determine how books will be sorted
+   * @throws         IllegalArgumentException if the sortList is invalid
+   */
+  HandleTree(Attribute[] sortList) {
+    BinaryBookshelf.sortListValidity(sortList);
+    this.root = NIL;
+    this.size = 0;
+    this.path = new int[64];
+    this.sortList = sortList.clone();
+  }
+
+  /**
+   * Single arg constructor to create a HandleTree with the same root, size and sortList as another,
+   * for subclasses that copy the other's storage handle for handle
+   *
+   * @param source HandleTree whose tree the new one has
+   */
+  HandleTree(HandleTree source) {
+    this.root = source.root;
+    this.size = source.size;
+    this.path = new int[64];
+    this.sortList = source.sortList;
+  }
+
+  // storage
+  /**
+   * Stores a book under a new handle with no children and height 1
+   *
+   * @param book Book to store
+   * @return     the new handle
+   */
+  abstract int store(Book book);
+
+  /**
+   * Forgets every stored book. Handles handed out before are no longer valid.
+   */
+  abstract void release();
+
+  /**
+   * Creates a Book from the stored book of a handle
+   *
+   * @param node int a handle
+   * @return     a Book equal to the one stored
+   */
+  abstract Book book(int node);
+
+  /**
+   * Gets the author prefix stored for a handle, as packed by BinaryBookshelf.authorPrefix
+   *
+   * @param node int a handle
+   * @return     the packed first four chars of the stored book's author
+   */
+  abstract long prefix(int node);
+
+  /**
+   * Compares a book to the stored book of a handle by each Attribute of sortList in turn
+   *
+   * @param book Book to compare
+   * @param node int a handle
+   * @return     negative if book sorts first, positive if it sorts after, 0 if they are the same
+   */
+  abstract int compare(Book book, int node);
+
+  /**
+   * Compares an author to the author of the stored book of a handle
+   *
+   * @param author String formatted like Book.getAuthor()
+   * @param node   int a handle
+   * @return       negative if author sorts first, positive if it sorts after, 0 if equal
+   */
+  abstract int compareAuthor(String author, int node);
+
+  /**
+   * @param node int a handle
+   * @return     the handle of node's left child, NIL if it has none
+   */
+  abstract int left(int node);
+
+  /**
+   * @param node int a handle
+   * @return     the handle of node's right child, NIL if it has none
+   */
+  abstract int right(int node);
+
+  /**
+   * @param node int a handle
+   * @return     the height of node's subtree, 1 for a leaf
+   */
+  abstract int height(int node);
+
+  /**
+   * @param node  int a handle
+   * @param child int the handle of node's new left child, or NIL
+   */
+  abstract void setLeft(int node, int child);
+
+  /**
+   * @param node  int a handle
+   * @param child int the handle of node's new right child, or NIL
+   */
+  abstract void setRight(int node, int child);
+
+  /**
+   * @param node   int a handle
+   * @param height int the new height of node's subtree
+   */
+  abstract void setHeight(int node, int height);
+
+  // mutators
+  /**
+   * Clears the bookshelf
+   */
+  public void clear() {
+    release();
+    this.root = NIL;
+    this.size = 0;
+  }
+
+  /**
+   * Inserts a book, walking down once and rebalancing on the way back up
+   *
+   * Complexity = O(logN)
+   *
+   * @param book a Book object to be added
+   * @throws     IllegalArgumentException if the book is already in the bookshelf
+   */
+  public void insertBook(Book book) {
+    if(root == NIL) {
+      root = store(book);
+      size = 1;
+      return;
+    }
+
+    // walks down until the child on the book's side is empty, throwing before anything changes if
+    // the book is already there
+    long prefix = BinaryBookshelf.authorPrefix(book.getAuthor());
+    int depth = 0;
+    int current = root;
+    int val;
+    while(true) {
+      val = compareKey(book, prefix, current);
+      if(val == 0)
+        throw new IllegalArgumentException("Cannot insert the same book multiple times");
+
+      if(depth == path.length)
+        path = Arrays.copyOf(path, depth * 2);
+      path[depth++] = current;
+
+      int next = val < 0 ? left(current) : right(current);
+      if(next == NIL)
+        break;
+      current = next;
+    }
+
+    int child = store(book);
+    if(val < 0)
+      setLeft(current, child);
+    else
+      setRight(current, child);
+    size += 1;
+
+    // a rotation after an insert restores the subtree's old height, so nothing above it changes
+    // once a subtree rotates or keeps its height
+    for(int i = depth - 1; i >= 0; --i) {
+      int node = path[i];
+      int oldHeight = height(node);
+      int subtree = rebalance(node);
+
+      if(subtree != node) {
+        if(i == 0)
+          root = subtree;
+        else if(left(path[i - 1]) == node)
+          setLeft(path[i - 1], subtree);
+        else
+          setRight(path[i - 1], subtree);
+      }
+
+      if(height(subtree) == oldHeight)
+        break;
+    }
+  }
+
+  /**
+   * Restores the AVL property at a node whose children are both balanced
+   *
+   * @param node int a handle whose subtree may be out of balance by at most 2
+   * @return     the root of node's subtree after rebalancing
+   */
+  private int rebalance(int node) {
+    int balance = heightOf(left(node)) - heightOf(right(node));
+
+    // left side is too tall, rotates right (after a left rotation of a left-right kink)
+    if(balance > 1) {
+      int child = left(node);
+      if(heightOf(left(child)) < heightOf(right(child)))
+        setLeft(node, rotateLeft(child));
+      return rotateRight(node);
+    }
+
+    // right side is too tall, rotates left (after a right rotation of a right-left kink)
+    if(balance < -1) {
+      int child = right(node);
+      if(heightOf(right(child)) < heightOf(left(child)))
+        setRight(node, rotateRight(child));
+      return rotateLeft(node);
+    }
+
+    updateHeight(node);
+    return node;
+  }
+
+  /**
+   * Rotates a subtree to the left, making the right child its new root
+   *
+   * @param node int the root of the subtree, which has a right child
+   * @return     the new root of the subtree
+   */
+  private int rotateLeft(int node) {
+    int newRoot = right(node);
+    setRight(node, left(newRoot));
+    setLeft(newRoot, node);
+    updateHeight(node);
+    updateHeight(newRoot);
+    return newRoot;
+  }
+
+  /**
+   * Rotates a subtree to the right, making the left child its new root
+   *
+   * @param node int the root of the subtree, which has a left child
+   * @return     the new root of the subtree
+   */
+  private int rotateRight(int node) {
+    int newRoot = left(node);
+    setLeft(node, right(newRoot));
+    setRight(newRoot, node);
+    updateHeight(node);
+    updateHeight(newRoot);
+    return newRoot;
+  }
+
+  /**
+   * Compares a book to the stored book of a handle, by author prefix first and only by the stored
+   * book when the prefixes tie
+   *
+   * @param book   Book to compare
+   * @param prefix long the author prefix of book
+   * @param node   int a handle
+   * @return       negative if book sorts first, positive if it sorts after, 0 if they are the same
+   */
+  private int compareKey(Book book, long prefix, int node) {
+    int val = Long.compareUnsigned(prefix, prefix(node));
+    return val != 0 ? val : compare(book, node);
+  }
+
+  /**
+   * Compares an author to the author of the stored book of a handle, by prefix first
+   *
+   * @param author String formatted like Book.getAuthor()
+   * @param prefix long the author prefix of author
+   * @param node   int a handle
+   * @return       negative if author sorts first, positive if it sorts after, 0 if equal
+   */
+  private int compareAuthorKey(String author, long prefix, int node) {
+    int val = Long.compareUnsigned(prefix, prefix(node));
+    return val != 0 ? val : compareAuthor(author, node);
+  }
+
+  /**
+   * Sets the height of a node from its children
+   *
+   * @param node int a handle
+   */
+  private void updateHeight(int node) {
+    setHeight(node, 1 + Math.max(heightOf(left(node)), heightOf(right(node))));
+  }
+
+  /**
+   * Gets the height of a subtree
+   *
+   * @param node int a handle, or NIL
+   * @return     the height of the subtree, 0 if it is empty
+   */
+  private int heightOf(int node) {
+    return node == NIL ? 0 : height(node);
+  }
+
+  // accessors
+  /**
+   * Checks if the bookshelf contains a book
+   *
+   * Complexity = O(logN)
+   *
+   * @param book a Book object that is trying to be found
+   * @return     true if found, false otherwise
+   */
+  public boolean contains(Book book) {
+    long prefix = BinaryBookshelf.authorPrefix(book.getAuthor());
+    int current = root;
+
+    while(current != NIL) {
+      int val = compareKey(book, prefix, current);
+      if(val == 0)
+        return true;
+      current = val < 0 ? left(current) : right(current);
+    }
+
+    return false;
+  }
+
+  /**
+   * Creates an ArrayList containing all books in the bookshelf that have the same author
+   *
+   * Complexity = O(logN + K), where K is the number of books by the author
+   *
+   * @param authorName a String representing which author's books are being looked for
+   * @return           an ArrayList containing all books by the author, in shelf order
+   */
+  public ArrayList<Book> getBooksByAuthor(String authorName) {
+    ArrayList<Book> authorBooks = new ArrayList<Book>();
+    int[] pending = new int[heightOf(root)];
+    int top = 0;
+    long prefix = BinaryBookshelf.authorPrefix(authorName);
+
+    // AUTHOR is always first in sortList, so walks down to the first book by the author, keeping
+    // every node passed on the left as the ones still to visit
+    int current = root;
+    while(current != NIL) {
+      if(compareAuthorKey(authorName, prefix, current) > 0) {
+        current = right(current);
+      } else {
+        pending[top++] = current;
+        current = left(current);
+      }
+    }
+
+    // walks in order from the first book by the author until a book by someone else shows up
+    while(top > 0) {
+      int next = pending[--top];
+      if(compareAuthorKey(authorName, prefix, next) != 0)
+        break;
+
+      authorBooks.add(book(next));
+
+      // the next books in order are down the left side of the right subtree
+      for(current = right(next); current != NIL; current = left(current))
+        pending[top++] = current;
+    }
+
+    return authorBooks;
+  }
+
+  /**
+   * Creates an Iterator that creates each Book in order only when it is reached
+   *
+   * @return an Iterator<Book> over the bookshelf
+   */
+  @Override
+  public Iterator<Book> iterator() {
+    return new Iterator<Book>() {
+      private int[] pending = new int[heightOf(root)]; // nodes still to visit, next on top
+      private int top = descend(root, 0); // number of nodes in pending
+
+      /**
+       * Pushes a node and its whole left side
+       *
+       * @param node int the node to start from
+       * @param top  int the number of nodes already in pending
+       * @return     the number of nodes in pending after pushing
+       */
+      private int descend(int node, int top) {
+        for(; node != NIL; node = left(node))
+          pending[top++] = node;
+        return top;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return top > 0;
+      }
+
+      @Override
+      public Book next() {
+        if(top == 0)
+          throw new NoSuchElementException();
+        int node = pending[--top];
+        top = descend(right(node), top);
+        return book(node);
+      }
+    };
+  }
+
+  /**
+   * Returns a copy of the sortList
+   *
+   * @return an array of the 4 Attributes in the order books are compared by
+   */
+  public Attribute[] getSortList() {
+    return this.sortList.clone();
+  }
+
+  /**
+   * Gets the sortList without copying it, for subclasses comparing books
+   *
+   * @return this.sortList the sortList
+   */
+  Attribute[] sortList() {
+    return this.sortList;
+  }
+
+  /**
+   * Checks whether this bookshelf is empty or not
+   *
+   * @return true if there are no books, false otherwise
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Returns how many books are in the bookshelf
+   *
+   * @return this.size an int representing how many books are in the bookshelf
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Builds a String with each book on a new line, in the same format as BinaryBookshelf
+   *
+   * @return a String representing the bookshelf
+   */
+  @Override
+  public String toString() {
+    StringBuilder returnString = new StringBuilder();
+
+    for(Book book : this) {
+      returnString.append('\n');
+      book.appendTo(returnString);
+    }
+
+    return returnString.toString();
+  }
+}
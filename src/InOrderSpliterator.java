@@ -0,0 +1,235 @@
+// imports
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * This class walks a tree of TreeNodes in order. It is both an Iterator, which only needs a single
+ * growable stack, and a Spliterator that splits along subtrees so a tree can be streamed in parallel
+ */
+class InOrderSpliterator<T> implements Iterator<T>, Spliterator<T> {
+  // fields
+  private TreeNode<T> subtree; // subtree to walk in full before anything on the stack, may be null
+  private TreeNode<T>[] stack; // nodes still to visit, last in order at 0, each before its right
+  private int top; // number of nodes on the stack
+  private long estimate; // estimated number of nodes left, exact while sized
+  private boolean sized; // true until this has been split
+  private Comparator<? super T> comparator; // order of the tree, null if unknown
+
+  // constructors
+  /**
+   * Three arg constructor to walk a whole tree
+   *
+   * @param root       TreeNode<T> the root of the tree, may be null
+   * @param size       long the number of nodes in the tree
+   * @param comparator Comparator<? super T> that orders the tree, null if unknown
+   */
+  public InOrderSpliterator(TreeNode<T> root, long size, Comparator<? super T> comparator) {
+    this(root, size, comparator, true);
+  }
+
+  /**
+   * Four arg constructor used for the halves of a split
+   *
+   * @param subtree    TreeNode<T> the root of the subtree to walk, may be null
+   * @param estimate   long the estimated number of nodes in the subtree
+   * @param comparator Comparator<? super T> that orders the tree, null if unknown
+   * @param sized      boolean true if estimate is exact
+   */
+  private InOrderSpliterator(TreeNode<T> subtree, long estimate, Comparator<? super T> comparator,
+      boolean sized) {
+    // generic arrays can't be created, so the stack starts raw
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TreeNode<T>[] stack = (TreeNode<T>[]) new TreeNode[16];
+    this.subtree = subtree;
+    this.stack = stack;
+    this.top = 0;
+    this.estimate = estimate;
+    this.comparator = comparator;
+    this.sized = sized;
+  }
+
+  // iteration
+  /**
+   * Checks whether there are nodes left to visit
+   *
+   * @return true if next() has another element to return
+   */
+  @Override
+  public boolean hasNext() {
+    return subtree != null || top > 0;
+  }
+
+  /**
+   * Returns the data of the next node in order
+   *
+   * @throws NoSuchElementException if every node has been visited
+   * @return the data of the next node
+   */
+  @Override
+  public T next() {
+    // the pending subtree comes first, starting from its leftmost node
+    if(subtree != null) {
+      pushLeftSide(subtree);
+      subtree = null;
+    }
+
+    if(top == 0)
+      throw new NoSuchElementException();
+
+    TreeNode<T> next = stack[--top];
+    stack[top] = null;
+
+    // the nodes right after this one are down the left side of its right subtree
+    pushLeftSide(next.getRight());
+
+    if(estimate > 0)
+      estimate--;
+    return next.getData();
+  }
+
+  /**
+   * Gives the data of the next node to action, if there is one
+   *
+   * @param action Consumer<? super T> to receive the data
+   * @return true if there was a node left to visit
+   */
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if(!hasNext())
+      return false;
+
+    action.accept(next());
+    return true;
+  }
+
+  /**
+   * Gives the data of every remaining node to action, in order
+   *
+   * @param action Consumer<? super T> to receive the data
+   */
+  @Override
+  public void forEachRemaining(Consumer<? super T> action) {
+    while(hasNext())
+      action.accept(next());
+  }
+
+  // splitting
+  /**
+   * Splits off the first part of the remaining nodes. An unstarted subtree gives away its left
+   * subtree; a started walk gives away every stacked node but the last, with their right subtrees.
+   *
+   * @return an InOrderSpliterator<T> covering the first part, null if this can't be split
+   */
+  @Override
+  public Spliterator<T> trySplit() {
+    // the pending subtree gives away its left side and keeps its root and right side
+    if(subtree != null) {
+      TreeNode<T> left = subtree.getLeft();
+      push(subtree);
+      subtree = null;
+
+      if(left != null)
+        return split(left);
+    }
+
+    if(top == 0)
+      return null;
+
+    // a single stacked node gives away itself and keeps its right subtree to split further
+    if(top == 1) {
+      TreeNode<T> last = stack[0];
+      if(last.getRight() == null)
+        return null;
+
+      stack[0] = null;
+      top = 0;
+      subtree = last.getRight();
+      return split(new TreeNode<T>(last.getData()));
+    }
+
+    // gives away every stacked node except the bottom one, which is last in order
+    InOrderSpliterator<T> prefix = split(null);
+    for(int i = 1; i < top; ++i) {
+      prefix.push(stack[i]);
+      stack[i] = null;
+    }
+    top = 1;
+    return prefix;
+  }
+
+  /**
+   * Creates the spliterator for a first part, giving it half of the estimate
+   *
+   * @param part TreeNode<T> the subtree the first part will walk, may be null
+   * @return     the new InOrderSpliterator<T>
+   */
+  private InOrderSpliterator<T> split(TreeNode<T> part) {
+    long half = estimate >>> 1;
+    estimate -= half;
+    sized = false;
+    return new InOrderSpliterator<T>(part, half, comparator, false);
+  }
+
+  /**
+   * Gets the estimated number of nodes left
+   *
+   * @return this.estimate, exact if this has not been split
+   */
+  @Override
+  public long estimateSize() {
+    return this.estimate;
+  }
+
+  /**
+   * Gets the characteristics of this walk
+   *
+   * @return ORDERED, DISTINCT and NONNULL, plus SORTED if the comparator is known and SIZED if the
+   *         estimate is exact
+   */
+  @Override
+  public int characteristics() {
+    return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL
+        | (comparator != null ? Spliterator.SORTED : 0) | (sized ? Spliterator.SIZED : 0);
+  }
+
+  /**
+   * Gets the comparator that orders the tree
+   *
+   * @throws IllegalStateException if the order is not known
+   * @return this.comparator
+   */
+  @Override
+  public Comparator<? super T> getComparator() {
+    if(comparator == null)
+      throw new IllegalStateException();
+
+    return this.comparator;
+  }
+
+  // helpers
+  /**
+   * Pushes a node and every node down its left side onto the stack
+   *
+   * @param current TreeNode<T> the first node to push, may be null
+   */
+  private void pushLeftSide(TreeNode<T> current) {
+    for(; current != null; current = current.getLeft())
+      push(current);
+  }
+
+  /**
+   * Pushes a node onto the stack, growing it when full
+   *
+   * @param node TreeNode<T> the node to push
+   */
+  private void push(TreeNode<T> node) {
+    if(top == stack.length)
+      stack = Arrays.copyOf(stack, top * 2);
+
+    stack[top++] = node;
+  }
+}
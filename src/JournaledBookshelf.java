@@ -0,0 +1,492 @@
+// imports
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * This class makes inserts into and removals from a BinaryBookshelf durable by appending a record
+ * of every change to a journal file and forcing it to disk before the change reaches the bookshelf,
+ * so a reader never sees a change that a crash could still lose. A removal is journaled as a
+ * tombstone record holding the removed book. Changes that arrive while the journal is being forced
+ * to disk wait together and are written and forced by one of them in a single batch (group
+ * commit), so many threads changing the bookshelf at once share each fsync instead of paying for
+ * one each.
+ *
+ * Opening a journal replays its records in order, so a tombstone takes out the book an earlier
+ * record inserted, then applies what is left with one bulk removeBooks and one bulk insertBooks. A
+ * record left half written by a crash fails its checksum and is cut off, along with anything after
+ * it. Replayed books keep the IDs they were journaled with, and the allocator given when opening
+ * the journal, or the default one, numbers Books created afterwards past them.
+ *
+ * Changes go through this class one at a time, so any BinaryBookshelf works. Only changes made
+ * through this class are journaled: a book inserted or removed straight through getBookshelf() is
+ * lost on replay. To read the bookshelf from other threads while changing it, give it a
+ * ConcurrentBinaryBookshelf.
+ */
+public class JournaledBookshelf implements Closeable {
+  // fields
+  private static final int MAGIC = 0x424B4A4C; // "BKJL"
+  private static final int FORMAT_VERSION = 2; // changes whenever the record layout does
+  private static final int HEADER_SIZE = 8; // bytes before the first record
+  private static final int MAX_RECORD_SIZE = 1 << 26; // larger lengths can only be corruption
+  private static final int INSERT = 0; // kind of a record whose book was inserted
+  private static final int REMOVE = 1; // kind of a tombstone, whose book was removed
+  private BinaryBookshelf shelf; // the bookshelf every journaled book goes into
+  private FileChannel channel; // the journal, positioned at its end
+  private ReentrantLock lock; // guards everything below
+  private Condition flushed; // signalled whenever a batch has been forced to disk
+  private ByteBuffer pending; // records appended since the last batch started
+  private ByteBuffer spare; // the other buffer, written out while pending fills
+  private long appended; // sequence number of the last record appended
+  private long durable; // sequence number of the last record forced to disk
+  private boolean flushing; // true while some thread is writing a batch
+  private IOException failure; // the error that broke the journal, null if it is healthy
+  private boolean closing; // true once close() is called, after which no insert may start
+  private TreeSet<Book> unapplied; // books being journaled but not yet applied to shelf
+
+  // constructors
+  /**
+   * Two arg constructor that replays a journal into a bookshelf and opens it for appending. The
+   * file is created if it doesn't exist. Books created afterwards without an allocator are
+   * numbered past the replayed ones.
+   *
+   * @param shelf   BinaryBookshelf to replay into and insert into
+   * @param journal Path of the journal file
+   * @throws        IOException if the journal can't be read or written or isn't a journal
+   * @throws        IllegalArgumentException if a journaled book is already in shelf, or is
+   *                inserted twice without a tombstone between
+   */
+  public JournaledBookshelf(BinaryBookshelf shelf, Path journal) throws IOException {
+    this(shelf, journal, Book.defaultAllocator());
+  }
+
+  /**
+   * Three arg constructor that replays a journal into a bookshelf and opens it for appending, then
+   * keeps an allocator from handing out the ID of any replayed book. The file is created if it
+   * doesn't exist.
+   *
+   * @param shelf   BinaryBookshelf to replay into and insert into
+   * @param journal Path of the journal file
+   * @param ids     BookIdAllocator that numbers the books created for this bookshelf
+   * @throws        IOException if the journal can't be read or written or isn't a journal
+   * @throws        IllegalArgumentException if a journaled book is already in shelf, or is
+   *                inserted twice without a tombstone between
+   */
+  public JournaledBookshelf(BinaryBookshelf shelf, Path journal, BookIdAllocator ids)
+      throws IOException {
+    this.shelf = shelf;
+    this.channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.lock = new ReentrantLock();
+    this.flushed = lock.newCondition();
+    this.pending = ByteBuffer.allocate(1 << 16);
+    this.spare = ByteBuffer.allocate(1 << 16);
+    this.unapplied = new TreeSet<Book>(shelf.getComparator());
+
+    try {
+      replay(ids);
+    } catch(IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  // mutators
+  /**
+   * Journals a book and, once its record is durable, inserts it into the bookshelf, so readers
+   * never see a book that a crash could lose
+   *
+   * @param book a Book object to be added
+   * @throws     IOException if the journal can't be written, in which case the book is not
+   *             inserted
+   * @throws     IllegalArgumentException if the book is already in the bookshelf
+   * @throws     IllegalStateException if the journal is closed or failed earlier
+   */
+  public void insertBook(Book book) throws IOException {
+    lock.lock();
+    try {
+      checkUsable();
+      reserve(book);
+
+      try {
+        append(INSERT, book);
+        awaitDurable(++appended);
+        shelf.insertBook(book);
+      } finally {
+        unapplied.remove(book);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Journals a whole batch and, once all of it is durable, inserts it with one bulk insertBooks
+   *
+   * @param books a Collection of Book objects to be added
+   * @throws      IOException if the journal can't be written, in which case no book is inserted
+   * @throws      IllegalArgumentException if a book is in the batch twice or already shelved
+   * @throws      IllegalStateException if the journal is closed or failed earlier
+   */
+  public void insertBooks(Collection<? extends Book> books) throws IOException {
+    lock.lock();
+    try {
+      checkUsable();
+      if(books.isEmpty())
+        return;
+
+      ArrayList<Book> reserved = new ArrayList<Book>(books.size());
+      try {
+        for(Book book : books) {
+          reserve(book);
+          reserved.add(book);
+        }
+
+        for(Book book : books)
+          append(INSERT, book);
+        awaitDurable(++appended);
+        shelf.insertBooks(books);
+      } finally {
+        unapplied.removeAll(reserved);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Journals a tombstone for a book and, once it is durable, removes the book from the bookshelf.
+   * A book another call is still journaling counts as not on the shelf.
+   *
+   * @param book a Book object to be removed
+   * @throws     IOException if the journal can't be written, in which case the book is not
+   *             removed
+   * @throws     IllegalStateException if the journal is closed or failed earlier
+   * @return     true if the book was on the shelf, false otherwise, in which case nothing is
+   *             journaled
+   */
+  public boolean removeBook(Book book) throws IOException {
+    lock.lock();
+    try {
+      checkUsable();
+      if(!shelf.contains(book) || !unapplied.add(book))
+        return false;
+
+      try {
+        append(REMOVE, book);
+        awaitDurable(++appended);
+        return shelf.removeBook(book);
+      } finally {
+        unapplied.remove(book);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Journals a tombstone for every book of a batch that is on the shelf and, once all of them are
+   * durable, removes those books with one bulk removeBooks. Books that aren't on the shelf, or are
+   * in the batch more than once, are skipped without being journaled.
+   *
+   * @param books a Collection of Book objects to be removed
+   * @throws      IOException if the journal can't be written, in which case no book is removed
+   * @throws      IllegalStateException if the journal is closed or failed earlier
+   * @return      the number of books removed
+   */
+  public int removeBooks(Collection<? extends Book> books) throws IOException {
+    lock.lock();
+    try {
+      checkUsable();
+
+      ArrayList<Book> reserved = new ArrayList<Book>();
+      try {
+        for(Book book : books) {
+          if(shelf.contains(book) && unapplied.add(book))
+            reserved.add(book);
+        }
+        if(reserved.isEmpty())
+          return 0;
+
+        for(Book book : reserved)
+          append(REMOVE, book);
+        awaitDurable(++appended);
+        return shelf.removeBooks(reserved);
+      } finally {
+        unapplied.removeAll(reserved);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Closes the journal file once every record already appended is durable, writing the last batch
+   * itself if no insert is. The bookshelf stays usable but further inserts here throw.
+   *
+   * @throws IOException if the last records or the file can't be written or closed
+   */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if(closing)
+        return;
+      closing = true;
+
+      // inserts that appended before this still wait on their records, so the channel has to stay
+      // open until they are durable or the journal has failed
+      try {
+        if(failure == null) {
+          awaitDurable(appended);
+          channel.force(false);
+        }
+      } finally {
+        while(flushing)
+          flushed.awaitUninterruptibly();
+        channel.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // accessors
+  /**
+   * Gets the bookshelf this journal inserts into
+   *
+   * @return this.shelf the bookshelf, whose changes are only journaled if they are made through
+   *         this JournaledBookshelf
+   */
+  public BinaryBookshelf getBookshelf() {
+    return this.shelf;
+  }
+
+  // helpers
+  /**
+   * Throws if this journal can't take changes anymore. Must be called holding lock.
+   *
+   * @throws IllegalStateException if the journal is closed or a write failed
+   * @throws UnsupportedOperationException if the bookshelf is a snapshot
+   */
+  private void checkUsable() {
+    if(shelf.isReadOnly())
+      throw new UnsupportedOperationException("A bookshelf snapshot cannot be changed");
+    if(closing)
+      throw new IllegalStateException("Journal is closed");
+    if(failure != null)
+      throw new IllegalStateException("Journal failed earlier", failure);
+  }
+
+  /**
+   * Claims a book for an insert that is about to journal it, so that neither the bookshelf nor
+   * another insert still waiting on the journal can hold it too. Must be called holding lock.
+   *
+   * @param book Book to claim
+   * @throws     IllegalArgumentException if the book is shelved or claimed already
+   */
+  private void reserve(Book book) {
+    if(shelf.contains(book) || !unapplied.add(book))
+      throw new IllegalArgumentException("Cannot insert the same book multiple times");
+  }
+
+  /**
+   * Waits until a record is durable. If no batch is being written, this thread writes and forces
+   * every record appended so far, releasing lock while it does so others can keep appending.
+   * Must be called holding lock.
+   *
+   * @param sequence long the sequence number of the record to wait for
+   * @throws         IOException if the batch holding the record couldn't be written
+   */
+  private void awaitDurable(long sequence) throws IOException {
+    while(durable < sequence) {
+      if(failure != null)
+        throw new IOException("Journal write failed", failure);
+
+      if(flushing) {
+        flushed.awaitUninterruptibly();
+        continue;
+      }
+
+      // takes every record appended so far as one batch
+      flushing = true;
+      ByteBuffer batch = pending;
+      long target = appended;
+      pending = spare;
+
+      lock.unlock();
+      IOException error = null;
+      try {
+        batch.flip();
+        while(batch.hasRemaining())
+          channel.write(batch);
+        channel.force(false);
+      } catch(IOException e) {
+        error = e;
+      } finally {
+        lock.lock();
+      }
+
+      batch.clear();
+      spare = batch;
+      flushing = false;
+      if(error != null)
+        failure = error;
+      else
+        durable = target;
+      flushed.signalAll();
+    }
+  }
+
+  /**
+   * Adds the record for a book to pending, growing it if needed. Must be called holding lock.
+   *
+   * A record is the payload length, the CRC32 of the payload, then the payload: the record kind,
+   * ID, page count, and the title, author last name and author first name each as a char count and
+   * its chars
+   *
+   * @param kind int INSERT or REMOVE
+   * @param book Book to append
+   */
+  private void append(int kind, Book book) {
+    String[] strings = {book.getTitle(), book.getAuthorLastname(), book.getAuthorFirstname()};
+    int payload = 12;
+    for(int i = 0; i < strings.length; ++i)
+      payload += 4 + 2 * strings[i].length();
+
+    if(pending.remaining() < 8 + payload) {
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+          pending.position() + 8 + payload));
+      pending.flip();
+      grown.put(pending);
+      pending = grown;
+    }
+
+    int start = pending.position();
+    pending.putInt(payload).putInt(0).putInt(kind).putInt(book.ID).putInt(book.getPageCount());
+    for(int i = 0; i < strings.length; ++i) {
+      pending.putInt(strings[i].length());
+      for(int j = 0; j < strings[i].length(); ++j)
+        pending.putChar(strings[i].charAt(j));
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(pending.array(), start + 8, payload);
+    pending.putInt(start + 4, (int) crc.getValue());
+  }
+
+  /**
+   * Reads every complete record in the journal, cuts off a torn tail, and bulk applies what the
+   * records add up to: books whose last record is a tombstone are removed, the rest are inserted
+   *
+   * @param ids BookIdAllocator to keep from handing out a replayed ID
+   * @throws    IOException if the file can't be read or doesn't start like a journal
+   * @throws    IllegalArgumentException if a journaled book is already in shelf, or is inserted
+   *            twice without a tombstone between
+   */
+  private void replay(BookIdAllocator ids) throws IOException {
+    // a new or never finished journal just gets a fresh header
+    if(channel.size() < HEADER_SIZE) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION);
+      header.flip();
+      channel.truncate(0);
+      channel.position(0);
+      while(header.hasRemaining())
+        channel.write(header);
+      channel.force(false);
+      return;
+    }
+
+    TreeSet<Book> books = new TreeSet<Book>(shelf.getComparator()); // inserted and not removed
+    TreeSet<Book> removed = new TreeSet<Book>(shelf.getComparator()); // tombstoned, not replayed
+    int maxId = -1;
+    long valid = HEADER_SIZE;
+    channel.position(0);
+    // not closed, since that would close the channel
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Channels.newInputStream(channel), 1 << 16));
+
+    if(in.readInt() != MAGIC)
+      throw new IOException("Not a bookshelf journal");
+    if(in.readInt() != FORMAT_VERSION)
+      throw new IOException("Unsupported bookshelf journal version");
+
+    // stops at the end of the file or the first record that didn't get fully written
+    while(true) {
+      byte[] payload;
+      int checksum;
+      try {
+        int length = in.readInt();
+        checksum = in.readInt();
+        if(length < 24 || length > MAX_RECORD_SIZE)
+          break;
+        payload = new byte[length];
+        in.readFully(payload);
+      } catch(EOFException e) {
+        break;
+      }
+
+      CRC32 crc = new CRC32();
+      crc.update(payload, 0, payload.length);
+      if((int) crc.getValue() != checksum)
+        break;
+      ByteBuffer record = ByteBuffer.wrap(payload);
+      int kind = record.getInt();
+      Book book = decode(record);
+      if(book == null || (kind != INSERT && kind != REMOVE))
+        break;
+
+      // a tombstone cancels an earlier insert, or else removes a book shelf already held
+      if(kind == INSERT && !books.add(book))
+        throw new IllegalArgumentException("Cannot insert the same book multiple times");
+      if(kind == REMOVE && !books.remove(book))
+        removed.add(book);
+      maxId = Math.max(maxId, book.ID);
+      valid += 8 + payload.length;
+    }
+
+    channel.truncate(valid);
+    channel.position(valid);
+    shelf.removeBooks(removed);
+    shelf.insertBooks(books);
+
+    // books created from now on must not reuse a replayed ID, even one that was removed
+    ids.reserveThrough(maxId);
+  }
+
+  /**
+   * Restores a book from a record's payload
+   *
+   * @param payload ByteBuffer holding the payload
+   * @return        the Book, null if the payload doesn't hold a valid one
+   */
+  private static Book decode(ByteBuffer payload) {
+    try {
+      int id = payload.getInt();
+      int pageCount = payload.getInt();
+      String[] strings = new String[3];
+      for(int i = 0; i < strings.length; ++i) {
+        char[] chars = new char[payload.getInt()];
+        for(int j = 0; j < chars.length; ++j)
+          chars[j] = payload.getChar();
+        strings[i] = new String(chars);
+      }
+      return new Book(id, strings[0], pageCount, strings[1], strings[2]);
+    } catch(RuntimeException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,597 @@
+// imports
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class saves a BinaryBookshelf to a compact binary file and serves it back straight from a
+ * memory-mapped copy of that file. Opening one maps the file and reads only its header, so
+ * contains, getBooksByAuthor and iteration work right away, and a Book object is only created for
+ * a book that is returned. A record is checked to point inside the string table when it is read,
+ * so a corrupt record throws IllegalStateException from whichever call reaches it. Saving writes
+ * a temporary file and moves it over the old one, so a crash mid-save leaves the previous file
+ * whole.
+ *
+ * The file is big-endian and laid out as:
+ *   header  - "BKSH", the format version, the number of books, the 4 sortList Attributes as bytes,
+ *             and the length of the string table in chars
+ *   records - one 32 byte record per book in shelf order, so the records form an implicit balanced
+ *             tree that binary search walks: ID, page count, then the offset and length in chars of
+ *             the title, author last name and author first name in the string table
+ *   strings - UTF-16 chars holding each distinct String once, since most names repeat
+ */
+public class MappedBookshelf implements Iterable<Book> {
+  // fields
+  private static final int MAGIC = 0x424B5348; // "BKSH"
+  private static final int FORMAT_VERSION = 1; // changes whenever the layout does
+  private static final int HEADER_SIZE = 20; // bytes before the first record
+  private static final int RECORD_SIZE = 32; // bytes in each record
+  private static final int WRITE_BUFFER_SIZE = 1 << 16; // bytes buffered while saving
+  private ByteBuffer buffer; // the whole file, only ever read with absolute gets
+  private int size; // number of books in the file
+  private Attribute[] sortList; // order the records are sorted in
+  private int stringBase; // byte offset of the string table
+  private int stringChars; // length of the string table in chars, which every String must fit in
+
+  // constructors
+  /**
+   * Single arg constructor that checks a mapped file and reads its header
+   *
+   * @param buffer ByteBuffer holding the whole file
+   * @throws       IOException if the buffer doesn't hold a valid bookshelf file
+   */
+  private MappedBookshelf(ByteBuffer buffer) throws IOException {
+    if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+      throw new IOException("Not a bookshelf file");
+    if(buffer.getInt(4) != FORMAT_VERSION)
+      throw new IOException("Unsupported bookshelf file version " + buffer.getInt(4));
+
+    this.buffer = buffer;
+    this.size = buffer.getInt(8);
+
+    // the sortList has to be one a BinaryBookshelf would accept
+    Attribute[] attributes = Attribute.values();
+    this.sortList = new Attribute[4];
+    for(int i = 0; i < sortList.length; ++i) {
+      int ordinal = buffer.get(12 + i);
+      if(ordinal < 0 || ordinal >= attributes.length)
+        throw new IOException("Corrupt bookshelf file");
+      sortList[i] = attributes[ordinal];
+    }
+    try {
+      new BinaryBookshelf(sortList);
+    } catch(IllegalArgumentException iae) {
+      throw new IOException("Corrupt bookshelf file", iae);
+    }
+
+    // the file has to be exactly as long as the header says
+    long stringBase = HEADER_SIZE + (long) size * RECORD_SIZE;
+    long stringChars = buffer.getInt(16);
+    if(size < 0 || stringChars < 0 || stringBase + stringChars * 2 != buffer.capacity())
+      throw new IOException("Corrupt bookshelf file");
+    this.stringBase = (int) stringBase;
+    this.stringChars = (int) stringChars;
+  }
+
+  // saving and loading
+  /**
+   * Saves the books of a bookshelf to a file in one sequential write. A concurrent bookshelf may
+   * keep changing, the file holds a snapshot taken when the save starts. The books go into a
+   * temporary file next to the target, which is forced to disk and then atomically moved over it,
+   * so the target always holds either the old bookshelf or the whole new one. The directory is
+   * forced after the move so the rename survives a crash too. A replaced file keeps its
+   * permissions, and a new one gets the same default permissions as any other new file.
+   *
+   * @param shelf BinaryBookshelf to save
+   * @param file  Path of the file to create or replace
+   * @throws      IOException if the file can't be written or replaced, leaving any old file as
+   *              it was
+   * @throws      IllegalArgumentException if a book has a null title or author name
+   */
+  public static void write(BinaryBookshelf shelf, Path file) throws IOException {
+    BinaryBookshelf snapshot = shelf.snapshot();
+    Attribute[] sortList = snapshot.getSortList();
+
+    // gives every distinct String a place in the string table before any record is written
+    StringTable strings = new StringTable();
+    int count = 0;
+    for(Book book : snapshot) {
+      strings.add(book.getTitle());
+      strings.add(book.getAuthorLastname());
+      strings.add(book.getAuthorFirstname());
+      count++;
+    }
+
+    Path absolute = file.toAbsolutePath();
+    Path temp = createTemp(absolute);
+    boolean moved = false;
+    try {
+      writeFile(snapshot, sortList, strings, count, temp);
+      Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      moved = true;
+    } finally {
+      if(!moved)
+        Files.deleteIfExists(temp);
+    }
+    forceDirectory(absolute.getParent());
+  }
+
+  /**
+   * Creates an empty file next to a target to save into. Unlike Files.createTempFile, which always
+   * makes the file private to its owner, the new file gets the target's permissions if the target
+   * exists and the usual defaults if it doesn't, so moving it over the target changes no access.
+   *
+   * @param target Path of the file that will be replaced, absolute
+   * @throws       IOException if the file can't be created or given the target's permissions
+   * @return       Path of the new, empty file
+   */
+  private static Path createTemp(Path target) throws IOException {
+    Set<PosixFilePermission> permissions = null;
+    try {
+      permissions = Files.getPosixFilePermissions(target);
+    } catch(NoSuchFileException | UnsupportedOperationException e) {
+      // a new target, or a file system without POSIX permissions, keeps the defaults
+    }
+
+    while(true) {
+      Path temp = target.resolveSibling(target.getFileName() + "."
+          + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+      try {
+        Files.newByteChannel(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+            .close();
+      } catch(FileAlreadyExistsException e) {
+        continue;
+      }
+
+      // set after creating, since the permissions asked for at creation are narrowed by the umask
+      if(permissions != null) {
+        try {
+          Files.setPosixFilePermissions(temp, permissions);
+        } catch(IOException | RuntimeException e) {
+          Files.deleteIfExists(temp);
+          throw e;
+        }
+      }
+      return temp;
+    }
+  }
+
+  /**
+   * Forces a directory's entries to disk, so a file just moved into it is still there after a
+   * crash. Some platforms, such as Windows, can't open a directory as a channel, so there this
+   * does nothing and the rename is left to the file system.
+   *
+   * @param directory Path of the directory
+   * @throws          IOException if the directory was opened but couldn't be forced
+   */
+  private static void forceDirectory(Path directory) throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch(IOException e) {
+      return;
+    }
+    try(FileChannel opened = channel) {
+      opened.force(true);
+    }
+  }
+
+  /**
+   * Writes a bookshelf file and forces it to disk
+   *
+   * @param snapshot BinaryBookshelf whose books are written, which must not change
+   * @param sortList array of the Attributes snapshot is sorted by
+   * @param strings  StringTable holding every String of every book
+   * @param count    int the number of books in snapshot
+   * @param file     Path of the file to write, which must already exist
+   * @throws         IOException if the file can't be written
+   */
+  private static void writeFile(BinaryBookshelf snapshot, Attribute[] sortList,
+      StringTable strings, int count, Path file) throws IOException {
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+      // header
+      out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count);
+      for(int i = 0; i < sortList.length; ++i)
+        out.put((byte) sortList[i].ordinal());
+      out.putInt(strings.length);
+
+      // records, in shelf order
+      for(Book book : snapshot) {
+        if(out.remaining() < RECORD_SIZE)
+          flush(out, channel);
+
+        out.putInt(book.ID).putInt(book.getPageCount());
+        strings.putReference(out, book.getTitle());
+        strings.putReference(out, book.getAuthorLastname());
+        strings.putReference(out, book.getAuthorFirstname());
+      }
+
+      // string table
+      for(String string : strings.strings) {
+        for(int i = 0; i < string.length(); ++i) {
+          if(out.remaining() < 2)
+            flush(out, channel);
+          out.putChar(string.charAt(i));
+        }
+      }
+      flush(out, channel);
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Opens a saved bookshelf by memory-mapping it. Only the header is read, records are checked
+   * as they are used.
+   *
+   * @param file Path of a file saved by write
+   * @throws     IOException if the file can't be read, is over 2GB, or isn't a bookshelf file
+   * @return     a MappedBookshelf serving the books in the file
+   */
+  public static MappedBookshelf open(Path file) throws IOException {
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if(channel.size() > Integer.MAX_VALUE)
+        throw new IOException("Bookshelf file is too large to map");
+
+      // the mapping stays valid after the channel is closed
+      return new MappedBookshelf(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Builds a BinaryBookshelf holding every book in the file, with the IDs they were saved with.
+   * Books created afterwards without an allocator are numbered past those IDs.
+   *
+   * Complexity = O(N)
+   *
+   * @param balanced true to keep the new bookshelf height balanced, false for a plain BST
+   * @throws         IllegalStateException if a record points outside the string table
+   * @return         a new BinaryBookshelf with the same sortList and books
+   */
+  public BinaryBookshelf toBookshelf(boolean balanced) {
+    return toBookshelf(balanced, Book.defaultAllocator());
+  }
+
+  /**
+   * Builds a BinaryBookshelf holding every book in the file, with the IDs they were saved with,
+   * and keeps an allocator from handing out any of those IDs
+   *
+   * Complexity = O(N)
+   *
+   * @param balanced true to keep the new bookshelf height balanced, false for a plain BST
+   * @param ids      BookIdAllocator that numbers the books created for the new bookshelf
+   * @throws         IllegalStateException if a record points outside the string table
+   * @return         a new BinaryBookshelf with the same sortList and books
+   */
+  public BinaryBookshelf toBookshelf(boolean balanced, BookIdAllocator ids) {
+    Book[] books = new Book[size];
+    int maxId = -1;
+    for(int i = 0; i < size; ++i) {
+      books[i] = get(i);
+      maxId = Math.max(maxId, books[i].ID);
+    }
+    ids.reserveThrough(maxId);
+
+    // the records are already sorted, so the bulk load's sort only has to confirm it
+    BinaryBookshelf shelf = new BinaryBookshelf(sortList, balanced);
+    shelf.insertBooks(books);
+    return shelf;
+  }
+
+  // accessors
+  /**
+   * Checks for a Book by binary searching the records
+   *
+   * Complexity = O(logN)
+   *
+   * @param book a Book object that is trying to be found
+   * @throws     IllegalStateException if a record it reaches points outside the string table
+   * @return     true if found, false otherwise
+   */
+  public boolean contains(Book book) {
+    int low = 0;
+    int high = size - 1;
+
+    while(low <= high) {
+      int mid = (low + high) >>> 1;
+      int val = compare(book, mid);
+
+      if(val == 0)
+        return true;
+      else if(val < 0)
+        high = mid - 1;
+      else
+        low = mid + 1;
+    }
+
+    return false;
+  }
+
+  /**
+   * Creates an ArrayList containing all books in the file that have the same author
+   *
+   * Complexity = O(logN + K), where K is the number of books by the author
+   *
+   * @param authorName a String representing which author's books are being looked for
+   * @throws           IllegalStateException if a record it reaches points outside the string table
+   * @return           an ArrayList containing all books by the author, in shelf order
+   */
+  public ArrayList<Book> getBooksByAuthor(String authorName) {
+    ArrayList<Book> authorBooks = new ArrayList<Book>();
+    int low = 0;
+    int high = size;
+
+    // AUTHOR is always first in sortList, so finds the first record by the author
+    while(low < high) {
+      int mid = (low + high) >>> 1;
+      if(compareAuthor(authorName, mid) > 0)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    for(int i = low; i < size && compareAuthor(authorName, i) == 0; ++i)
+      authorBooks.add(get(i));
+
+    return authorBooks;
+  }
+
+  /**
+   * Creates a Book from the record at an index
+   *
+   * @param index int the position of the book in shelf order
+   * @throws      IndexOutOfBoundsException if there is no book at index
+   * @throws      IllegalStateException if the record points outside the string table
+   * @return      a new Book with the saved ID and data
+   */
+  public Book get(int index) {
+    if(index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("No book at index " + index);
+
+    int record = HEADER_SIZE + index * RECORD_SIZE;
+    return new Book(buffer.getInt(record), readString(record + 8), buffer.getInt(record + 4),
+        readString(record + 16), readString(record + 24));
+  }
+
+  /**
+   * Creates an Iterator that creates each Book in order only when it is reached
+   *
+   * @return an Iterator<Book> over the file
+   */
+  @Override
+  public Iterator<Book> iterator() {
+    return new Iterator<Book>() {
+      private int next = 0; // index of the next book to return
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public Book next() {
+        if(next >= size)
+          throw new NoSuchElementException();
+        return get(next++);
+      }
+    };
+  }
+
+  /**
+   * Returns a copy of the sortList the file is ordered by
+   *
+   * @return an array of the 4 Attributes in the order books are compared by
+   */
+  public Attribute[] getSortList() {
+    return this.sortList.clone();
+  }
+
+  /**
+   * Checks whether the file holds any books
+   *
+   * @return true if there are no books, false otherwise
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Returns how many books are in the file
+   *
+   * @return this.size an int representing how many books are in the file
+   */
+  public int size() {
+    return this.size;
+  }
+
+  // helpers
+  /**
+   * Compares a Book to a record by each Attribute of sortList in turn, without creating a Book
+   *
+   * @param book  a Book to compare
+   * @param index int the position of the record
+   * @return      negative if book sorts before the record, positive if after, 0 if the same
+   */
+  private int compare(Book book, int index) {
+    int record = HEADER_SIZE + index * RECORD_SIZE;
+    int val = 0;
+
+    for(int i = 0; i < sortList.length && val == 0; ++i) {
+      switch(sortList[i]) {
+        case AUTHOR:
+          val = compareAuthor(book.getAuthor(), index);
+          break;
+        case TITLE:
+          val = compareString(book.getTitle(), record + 8);
+          break;
+        case PAGECOUNT:
+          val = Integer.compare(book.getPageCount(), buffer.getInt(record + 4));
+          break;
+        case ID:
+          val = Integer.compare(book.ID, buffer.getInt(record));
+          break;
+      }
+    }
+
+    return val;
+  }
+
+  /**
+   * Compares an author to the author of a record, reading the record's last name, ", " and first
+   * name as if they were one String
+   *
+   * @param author String formatted like Book.getAuthor()
+   * @param index  int the position of the record
+   * @return       negative if author sorts before the record's author, positive if after, 0 if equal
+   */
+  private int compareAuthor(String author, int index) {
+    int record = HEADER_SIZE + index * RECORD_SIZE;
+    int lastOffset = stringOffset(record + 16);
+    int lastLength = buffer.getInt(record + 20);
+    int firstOffset = stringOffset(record + 24);
+    int otherLength = lastLength + 2 + buffer.getInt(record + 28);
+    int limit = Math.min(author.length(), otherLength);
+
+    for(int i = 0; i < limit; ++i) {
+      char other;
+      if(i < lastLength) other = charAt(lastOffset + i);
+      else if(i == lastLength) other = ',';
+      else if(i == lastLength + 1) other = ' ';
+      else other = charAt(firstOffset + i - lastLength - 2);
+
+      if(author.charAt(i) != other)
+        return author.charAt(i) - other;
+    }
+    return author.length() - otherLength;
+  }
+
+  /**
+   * Compares a String to one in the string table like String.compareTo
+   *
+   * @param string String to compare
+   * @param field  int the byte offset of the offset and length of the other String
+   * @return       negative if string sorts first, positive if it sorts after, 0 if equal
+   */
+  private int compareString(String string, int field) {
+    int offset = stringOffset(field);
+    int length = buffer.getInt(field + 4);
+    int limit = Math.min(string.length(), length);
+
+    for(int i = 0; i < limit; ++i) {
+      char other = charAt(offset + i);
+      if(string.charAt(i) != other)
+        return string.charAt(i) - other;
+    }
+    return string.length() - length;
+  }
+
+  /**
+   * Reads a String out of the string table
+   *
+   * @param field int the byte offset of the offset and length of the String
+   * @return      the String
+   */
+  private String readString(int field) {
+    int offset = stringOffset(field);
+    char[] chars = new char[buffer.getInt(field + 4)];
+    for(int i = 0; i < chars.length; ++i)
+      chars[i] = charAt(offset + i);
+    return new String(chars);
+  }
+
+  /**
+   * Gets the offset of a String a record points to, checking that the whole String lies inside
+   * the string table
+   *
+   * @param field int the byte offset of the offset and length of the String
+   * @throws      IllegalStateException if the String doesn't fit in the string table
+   * @return      the position of the String's first char in the string table
+   */
+  private int stringOffset(int field) {
+    long offset = buffer.getInt(field);
+    long length = buffer.getInt(field + 4);
+    if(offset < 0 || length < 0 || offset + length > stringChars)
+      throw new IllegalStateException("Corrupt bookshelf file: record "
+          + (field - HEADER_SIZE) / RECORD_SIZE + " points outside the string table");
+    return (int) offset;
+  }
+
+  /**
+   * Reads one char of the string table
+   *
+   * @param offset int the position of the char in the string table
+   * @return       the char
+   */
+  private char charAt(int offset) {
+    return buffer.getChar(stringBase + offset * 2);
+  }
+
+  /**
+   * Writes out everything buffered so far
+   *
+   * @param out     ByteBuffer holding the bytes to write
+   * @param channel FileChannel to write them to
+   * @throws        IOException if the file can't be written
+   */
+  private static void flush(ByteBuffer out, FileChannel channel) throws IOException {
+    out.flip();
+    while(out.hasRemaining())
+      channel.write(out);
+    out.clear();
+  }
+
+  /**
+   * This class collects each distinct String once and remembers where it goes in the string table
+   */
+  private static class StringTable {
+    private HashMap<String, Integer> offsets = new HashMap<String, Integer>(); // char offsets
+    private ArrayList<String> strings = new ArrayList<String>(); // in string table order
+    private int length = 0; // chars in the string table so far
+
+    /**
+     * Adds a String to the table unless it is already there
+     *
+     * @param string String to add
+     * @throws       IllegalArgumentException if string is null
+     * @throws       IllegalStateException if the table would pass 2^31 chars
+     */
+    private void add(String string) {
+      if(string == null)
+        throw new IllegalArgumentException("Books with a null title or name cannot be saved");
+      if(offsets.containsKey(string))
+        return;
+      if((long) length + string.length() > Integer.MAX_VALUE)
+        throw new IllegalStateException("Too much text to save in one bookshelf file");
+
+      offsets.put(string, length);
+      strings.add(string);
+      length += string.length();
+    }
+
+    /**
+     * Writes the offset and length of a String that was added
+     *
+     * @param out    ByteBuffer to write to
+     * @param string String that was added
+     */
+    private void putReference(ByteBuffer out, String string) {
+      out.putInt(offsets.get(string)).putInt(string.length());
+    }
+  }
+}
@@ -0,0 +1,296 @@
+// imports
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * This class creates a balanced bookshelf that keeps its books outside the Java heap. Every field
+ * of every book, and the tree linking them, lives in direct buffers laid out as columns: one int
+ * column each for IDs, page counts, the tree links and heights, and the offset and length of each
+ * String, whose chars go into one shared char arena. The packed author prefix of each book is kept
+ * in two more int columns, so a lookup compares those first and only reads the arena on a tie.
+ * A book is addressed by an int handle, and a Book object is only created for a book that is
+ * returned, so the heap holds a fixed handful of objects however many books the bookshelf holds
+ * and the garbage collector never has to trace them.
+ *
+ * Handles number books in insertion order from 0 and stay valid until the bookshelf is cleared.
+ * Strings are stored as UTF-16 chars, so stored books compare exactly like String.compareTo would.
+ */
+public class OffHeapBookshelf extends HandleTree {
+  // fields
+  private static final int INITIAL_CAPACITY = 1024; // books the columns first have room for
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE / 4; // books an int column can address
+  private static final int ID = 0; // column of Book IDs
+  private static final int PAGES = 1; // column of page counts
+  private static final int TITLE = 2; // columns of title, last name and first name offsets,
+  private static final int LASTNAME = 4; // each followed by a column of their lengths in chars
+  private static final int FIRSTNAME = 6;
+  private static final int LEFT = 8; // column of left child handles
+  private static final int RIGHT = 9; // column of right child handles
+  private static final int HEIGHT = 10; // column of subtree heights
+  private static final int PREFIX = 11; // columns of the high and low halves of author prefixes
+  private static final int COLUMNS = 13; // number of int columns
+  private IntBuffer[] columns; // the int columns, each with room for capacity books
+  private int capacity; // books the columns have room for
+  private int count; // handles handed out so far
+  private CharBuffer arena; // every title and name, one after another
+
+  // constructors
+  /**
+   * Single arg constructor to create new, empty OffHeapBookshelf
+   *
+   * @param sortList an array of Attributes that will determine how books will be sorted
+   * @throws         IllegalArgumentException if the sortList is invalid
+   */
+  public OffHeapBookshelf(Attribute[] sortList) {
+    super(sortList);
+    release();
+  }
+
+  // accessors
+  /**
+   * Creates a Book from the stored book of a handle, with the ID it was inserted with
+   *
+   * @param handle int a handle returned in insertion order, from 0 to size() - 1
+   * @throws       IndexOutOfBoundsException if there is no book with that handle
+   * @return       a new Book equal to the one inserted
+   */
+  public Book get(int handle) {
+    if(handle < 0 || handle >= count)
+      throw new IndexOutOfBoundsException("No book with handle " + handle);
+
+    return book(handle);
+  }
+
+  // storage
+  /**
+   * Stores a book under the next handle, growing the columns and arena when they are full
+   *
+   * @param book Book to store
+   * @throws     IllegalArgumentException if book has a null title or name
+   * @throws     IllegalStateException if the bookshelf can't address any more books or text
+   * @return     the new handle
+   */
+  @Override
+  int store(Book book) {
+    String title = book.getTitle();
+    String last = book.getAuthorLastname();
+    String first = book.getAuthorFirstname();
+    if(title == null || last == null || first == null)
+      throw new IllegalArgumentException("Books with a null title or name cannot be stored");
+
+    if(count == capacity) {
+      if(capacity == MAX_CAPACITY)
+        throw new IllegalStateException("Too many books for one off-heap bookshelf");
+      grow((int) Math.min(2L * capacity, MAX_CAPACITY));
+    }
+    long chars = (long) arena.position() + title.length() + last.length() + first.length();
+    if(chars > arena.capacity()) {
+      if(chars > Integer.MAX_VALUE / 2)
+        throw new IllegalStateException("Too much text for one off-heap bookshelf");
+      arena = copy(arena, (int) Math.min(Math.max(2L * arena.capacity(), chars),
+          Integer.MAX_VALUE / 2));
+    }
+
+    int handle = count++;
+    columns[ID].put(handle, book.ID);
+    columns[PAGES].put(handle, book.getPageCount());
+    putString(TITLE, handle, title);
+    putString(LASTNAME, handle, last);
+    putString(FIRSTNAME, handle, first);
+    columns[LEFT].put(handle, NIL);
+    columns[RIGHT].put(handle, NIL);
+    columns[HEIGHT].put(handle, 1);
+    long prefix = BinaryBookshelf.authorPrefix(book.getAuthor());
+    columns[PREFIX].put(handle, (int) (prefix >>> 32));
+    columns[PREFIX + 1].put(handle, (int) prefix);
+    return handle;
+  }
+
+  /**
+   * Drops every column and the arena, handing their memory back, and starts over with small ones
+   */
+  @Override
+  void release() {
+    this.capacity = INITIAL_CAPACITY;
+    this.count = 0;
+    this.columns = new IntBuffer[COLUMNS];
+    for(int i = 0; i < COLUMNS; ++i)
+      columns[i] = ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+    this.arena = ByteBuffer.allocateDirect(capacity * 32).asCharBuffer();
+  }
+
+  @Override
+  Book book(int node) {
+    return new Book(columns[ID].get(node), readString(TITLE, node), columns[PAGES].get(node),
+        readString(LASTNAME, node), readString(FIRSTNAME, node));
+  }
+
+  @Override
+  long prefix(int node) {
+    return (long) columns[PREFIX].get(node) << 32 | (columns[PREFIX + 1].get(node) & 0xffffffffL);
+  }
+
+  @Override
+  int compare(Book book, int node) {
+    Attribute[] sortList = sortList();
+    int val = 0;
+
+    for(int i = 0; i < sortList.length && val == 0; ++i) {
+      switch(sortList[i]) {
+        case AUTHOR:
+          val = compareAuthor(book.getAuthor(), node);
+          break;
+        case TITLE:
+          val = compareString(book.getTitle(), TITLE, node);
+          break;
+        case PAGECOUNT:
+          val = Integer.compare(book.getPageCount(), columns[PAGES].get(node));
+          break;
+        case ID:
+          val = Integer.compare(book.ID, columns[ID].get(node));
+          break;
+      }
+    }
+
+    return val;
+  }
+
+  /**
+   * Compares an author to the author of a stored book, reading its last name, ", " and first name
+   * as if they were one String
+   */
+  @Override
+  int compareAuthor(String author, int node) {
+    int lastOffset = columns[LASTNAME].get(node);
+    int lastLength = columns[LASTNAME + 1].get(node);
+    int firstOffset = columns[FIRSTNAME].get(node);
+    int otherLength = lastLength + 2 + columns[FIRSTNAME + 1].get(node);
+    int limit = Math.min(author.length(), otherLength);
+
+    for(int i = 0; i < limit; ++i) {
+      char other;
+      if(i < lastLength) other = arena.get(lastOffset + i);
+      else if(i == lastLength) other = ',';
+      else if(i == lastLength + 1) other = ' ';
+      else other = arena.get(firstOffset + i - lastLength - 2);
+
+      if(author.charAt(i) != other)
+        return author.charAt(i) - other;
+    }
+    return author.length() - otherLength;
+  }
+
+  @Override
+  int left(int node) {
+    return columns[LEFT].get(node);
+  }
+
+  @Override
+  int right(int node) {
+    return columns[RIGHT].get(node);
+  }
+
+  @Override
+  int height(int node) {
+    return columns[HEIGHT].get(node);
+  }
+
+  @Override
+  void setLeft(int node, int child) {
+    columns[LEFT].put(node, child);
+  }
+
+  @Override
+  void setRight(int node, int child) {
+    columns[RIGHT].put(node, child);
+  }
+
+  @Override
+  void setHeight(int node, int height) {
+    columns[HEIGHT].put(node, height);
+  }
+
+  // helpers
+  /**
+   * Copies every column into new ones with more room
+   *
+   * @param newCapacity int the number of books the new columns have room for
+   */
+  private void grow(int newCapacity) {
+    for(int i = 0; i < COLUMNS; ++i) {
+      IntBuffer grown = ByteBuffer.allocateDirect(newCapacity * 4).asIntBuffer();
+      IntBuffer old = columns[i].duplicate();
+      old.position(0);
+      old.limit(count);
+      grown.put(old);
+      grown.position(0);
+      columns[i] = grown;
+    }
+    this.capacity = newCapacity;
+  }
+
+  /**
+   * Copies the used part of the arena into a bigger one
+   *
+   * @param arena       CharBuffer holding the text so far, up to its position
+   * @param newCapacity int the number of chars the new arena has room for
+   * @return            the new arena, positioned after the copied text
+   */
+  private static CharBuffer copy(CharBuffer arena, int newCapacity) {
+    CharBuffer grown = ByteBuffer.allocateDirect(newCapacity * 2).asCharBuffer();
+    CharBuffer old = arena.duplicate();
+    old.flip();
+    grown.put(old);
+    return grown;
+  }
+
+  /**
+   * Appends a String to the arena and records its offset and length
+   *
+   * @param column int the offset column of the String, its length column is the next one
+   * @param node   int the handle of the book
+   * @param string String to store
+   */
+  private void putString(int column, int node, String string) {
+    columns[column].put(node, arena.position());
+    columns[column + 1].put(node, string.length());
+    arena.put(string);
+  }
+
+  /**
+   * Compares a String to a stored one like String.compareTo
+   *
+   * @param string String to compare
+   * @param column int the offset column of the stored String
+   * @param node   int the handle of the book
+   * @return       negative if string sorts first, positive if it sorts after, 0 if equal
+   */
+  private int compareString(String string, int column, int node) {
+    int offset = columns[column].get(node);
+    int length = columns[column + 1].get(node);
+    int limit = Math.min(string.length(), length);
+
+    for(int i = 0; i < limit; ++i) {
+      char other = arena.get(offset + i);
+      if(string.charAt(i) != other)
+        return string.charAt(i) - other;
+    }
+    return string.length() - length;
+  }
+
+  /**
+   * Reads a stored String back onto the heap
+   *
+   * @param column int the offset column of the String
+   * @param node   int the handle of the book
+   * @return       the String
+   */
+  private String readString(int column, int node) {
+    char[] chars = new char[columns[column + 1].get(node)];
+    int offset = columns[column].get(node);
+    for(int i = 0; i < chars.length; ++i)
+      chars[i] = arena.get(offset + i);
+    return new String(chars);
+  }
+}
@@ -6,6 +6,8 @@ public class TreeNode <T> {
     private T data; // data contained in node
     private TreeNode<T> left; // left child
     private TreeNode<T> right; // right child
+    private int height; // height of the subtree rooted at this node, used by balanced shelves
+    private Object owner; // token of the tree that may change this node in place, for copy-on-write
     
     // constructors
     /**
@@ -17,6 +19,7 @@ public class TreeNode <T> {
       this.data = data;
       left = null;
       right = null;
+      height = 1;
     }
     
     /**
@@ -30,6 +33,8 @@ public class TreeNode <T> {
       this.data = data;
       this.left = left;
       this.right = right;
+      this.height = 1 + Math.max(left == null ? 0 : left.getHeight(),
+          right == null ? 0 : right.getHeight());
     }
     
     // mutators
@@ -51,6 +56,25 @@ public class TreeNode <T> {
       this.right = right;
     }
     
+    /**
+     * Sets the height of the subtree rooted at this TreeNode
+     * 
+     * @param height int the new height of this TreeNode
+     */
+    public void setHeight(int height) {
+      this.height = height;
+    }
+    
+    /**
+     * Sets the token of the tree that owns this TreeNode
+     * 
+     * @param owner Object the token, compared by identity, of the tree that may change this
+     *              TreeNode in place
+     */
+    public void setOwner(Object owner) {
+      this.owner = owner;
+    }
+    
     // accessors
     /**
      * Gets the data currently within this TreeNode
@@ -79,6 +103,26 @@ public class TreeNode <T> {
       return this.right;
     }
     
+    /**
+     * Gets the height of the subtree rooted at this TreeNode, where a leaf has height 1
+     * 
+     * @return this.height the height of this TreeNode
+     */
+    public int getHeight() {
+      return this.height;
+    }
+    
+    /**
+     * Gets the token of the tree that owns this TreeNode. A tree may only change a node in place
+     * if the node has the very token the tree holds now, any other node may be shared and gets
+     * copied.
+     * 
+     * @return this.owner the owner token of this TreeNode, null unless it was set
+     */
+    public Object getOwner() {
+      return this.owner;
+    }
+    
     /**
      * Returns String representation of this TreeNode's data
      * 